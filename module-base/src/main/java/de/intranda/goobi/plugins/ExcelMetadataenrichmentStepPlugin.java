@@ -1,10 +1,10 @@
 package de.intranda.goobi.plugins;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
@@ -26,21 +26,18 @@ import java.nio.file.Path;
  */
 
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.configuration.SubnodeConfiguration;
-import org.apache.commons.io.input.BOMInputStream;
 import org.apache.commons.lang.StringUtils;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellValue;
-import org.apache.poi.ss.usermodel.FormulaEvaluator;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Row.MissingCellPolicy;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.goobi.beans.Process;
 import org.goobi.beans.Step;
 import org.goobi.production.enums.PluginGuiType;
@@ -49,9 +46,19 @@ import org.goobi.production.enums.PluginType;
 import org.goobi.production.enums.StepReturnValue;
 import org.goobi.production.plugin.interfaces.IStepPluginVersion2;
 
+import de.intranda.goobi.plugins.utils.DocStructIndex;
+import de.intranda.goobi.plugins.utils.EnrichmentJournal;
 import de.intranda.goobi.plugins.utils.ExcelConfig;
+import de.intranda.goobi.plugins.utils.GroupMappingObject;
+import de.intranda.goobi.plugins.utils.MappingOccurrences;
 import de.intranda.goobi.plugins.utils.MetadataMappingObject;
 import de.intranda.goobi.plugins.utils.PersonMappingObject;
+import de.intranda.goobi.plugins.utils.ProcessLockManager;
+import de.intranda.goobi.plugins.utils.ProcessLockManager.ProcessLock;
+import de.intranda.goobi.plugins.utils.SpreadsheetExporter;
+import de.intranda.goobi.plugins.utils.SpreadsheetIndex;
+import de.intranda.goobi.plugins.utils.SpreadsheetIndexCache;
+import de.intranda.goobi.plugins.utils.SpreadsheetWatcher;
 import de.sub.goobi.config.ConfigPlugins;
 import de.sub.goobi.helper.StorageProvider;
 import de.sub.goobi.helper.exceptions.DAOException;
@@ -64,9 +71,12 @@ import ugh.dl.DigitalDocument;
 import ugh.dl.DocStruct;
 import ugh.dl.Fileformat;
 import ugh.dl.Metadata;
+import ugh.dl.MetadataGroup;
+import ugh.dl.MetadataGroupType;
 import ugh.dl.MetadataType;
 import ugh.dl.Person;
 import ugh.dl.Prefs;
+import ugh.exceptions.DocStructHasNoTypeException;
 import ugh.exceptions.MetadataTypeNotAllowedException;
 import ugh.exceptions.PreferencesException;
 import ugh.exceptions.ReadException;
@@ -80,6 +90,9 @@ public class ExcelMetadataenrichmentStepPlugin implements IStepPluginVersion2 {
 
     // TODO enrich existing elements or create new ones?
 
+    /** reads the spreadsheets in parallel to the mets files. If the queue is full, the step reads the spreadsheet itself. */
+    private static final ExecutorService SPREADSHEET_READER = createSpreadsheetReader();
+
     @Getter
     private String title = "intranda_step_excelMetadataenrichment";
     @Getter
@@ -106,6 +119,12 @@ public class ExcelMetadataenrichmentStepPlugin implements IStepPluginVersion2 {
         SubnodeConfiguration myconfig = ConfigPlugins.getProjectAndStepConfig(title, step);
 
         ec = new ExcelConfig(myconfig);
+        SpreadsheetIndexCache.setMaxEntries(ec.getCacheSize());
+
+        // spreadsheets in a shared folder can be read before the step is executed
+        if (ec.isPrewarmSpreadsheets() && ec.getExcelFolder().contains("/")) {
+            SpreadsheetWatcher.start(Paths.get(ec.getExcelFolder()), ec, EXCEL_FILTER);
+        }
 
     }
 
@@ -153,37 +172,13 @@ public class ExcelMetadataenrichmentStepPlugin implements IStepPluginVersion2 {
     @Override
     public PluginReturnValue run() {
 
-        Fileformat fileformat = null;
-        DigitalDocument digitalDocument = null;
-        DocStruct logical = null;
-        try {
-            // read mets file
-            fileformat = process.readMetadataFile();
-            digitalDocument = fileformat.getDigitalDocument();
-            logical = digitalDocument.getLogicalDocStruct();
-            if (logical.getType().isAnchor()) {
-                logical = logical.getAllChildren().get(0);
-            }
-
-        } catch (ReadException | PreferencesException | IOException | SwapException e) {
-            log.error(e);
-            return PluginReturnValue.ERROR;
+        if ("export".equals(ec.getMode())) {
+            return exportMetadata();
         }
 
         // its always null unless we are in a junit test
         if (excelFile == null) {
-            String folder = null;
-            // we have an existing folder
-            if (ec.getExcelFolder().contains("/")) {
-                folder = ec.getExcelFolder();
-            } else {
-                // we have a folder variable
-                try {
-                    folder = process.getConfiguredImageFolder(ec.getExcelFolder());
-                } catch (IOException | SwapException | DAOException e) {
-                    log.error(e);
-                }
-            }
+            String folder = getExcelFolder();
 
             List<Path> excelFilesInFolder = StorageProvider.getInstance().listFiles(folder, EXCEL_FILTER);
             if (excelFilesInFolder.size() == 1) {
@@ -203,220 +198,407 @@ public class ExcelMetadataenrichmentStepPlugin implements IStepPluginVersion2 {
             return PluginReturnValue.ERROR;
         }
 
-        // read excel file
+        EnrichmentJournal journal = null;
+        if (StringUtils.isNotBlank(ec.getJournalFile())) {
+            try {
+                journal = EnrichmentJournal.getInstance(ec.getJournalFile());
+            } catch (IOException e) {
+                log.error(e);
+                return PluginReturnValue.ERROR;
+            }
+        }
 
-        Map<String, Map<Integer, String>> completeMap = new HashMap<>();
+        // read excel file in the background while the lock is acquired and the mets file is read, files that were already checked or used for
+        // another process come from the cache
+        Path spreadsheetPath = Paths.get(excelFile);
+        Future<SpreadsheetIndex> spreadsheetTask = SPREADSHEET_READER.submit(() -> SpreadsheetIndexCache.getIndex(spreadsheetPath, ec));
 
-        String idColumn = ec.getExcelIdentifierColumn();
-        Map<String, Integer> headerOrder = new HashMap<>();
-        InputStream fileInputStream = null;
+        // the same process must not be enriched twice at the same time, hold the lock from reading until writing the mets file
         try {
-            fileInputStream = new FileInputStream(excelFile);
-            BOMInputStream in = new BOMInputStream(fileInputStream, false);
-            Workbook wb = WorkbookFactory.create(in);
-            Sheet sheet = wb.getSheetAt(0);
-            Iterator<Row> rowIterator = sheet.rowIterator();
-            FormulaEvaluator evaluator = wb.getCreationHelper().createFormulaEvaluator();
-            // get header and data row number from config first
-            int rowHeader = ec.getRowHeader();
-            int rowDataStart = ec.getRowDataStart();
-            int rowDataEnd = ec.getRowDataEnd();
-            int rowCounter = 0;
-
-            //  find the header row
-            Row headerRow = null;
-            while (rowCounter < rowHeader) {
-                headerRow = rowIterator.next();
-                rowCounter++;
+            Path lockFolder = null;
+            if (ec.isUseFileLock()) {
+                lockFolder = Paths.get(process.getProcessDataDirectory());
             }
+            try (ProcessLock lock = ProcessLockManager.lock(process.getId(), lockFolder)) {
+                return enrichMetsFile(spreadsheetTask, journal);
+            }
+        } catch (IOException | SwapException e) {
+            spreadsheetTask.cancel(true);
+            log.error(e);
+            return PluginReturnValue.ERROR;
+        } catch (InterruptedException e) {
+            spreadsheetTask.cancel(true);
+            Thread.currentThread().interrupt();
+            return PluginReturnValue.ERROR;
+        }
+    }
 
-            //  read and validate the header row
-            int numberOfCells = headerRow.getLastCellNum();
-            for (int i = 0; i < numberOfCells; i++) {
-                Cell cell = headerRow.getCell(i);
-                if (cell != null) {
-                    String value = cell.getStringCellValue();
-                    headerOrder.put(value, i);
+    /**
+     * read the mets file, add the data of the matching rows and save it again. Must be called while the process is locked.
+     *
+     * @param spreadsheetTask
+     * @param journal
+     * @return
+     */
+
+    private PluginReturnValue enrichMetsFile(Future<SpreadsheetIndex> spreadsheetTask, EnrichmentJournal journal) {
+        // skip processes that were already enriched with this file in an earlier, interrupted run
+        if (journal != null) {
+            try {
+                if (journal.isCompleted(process.getId(), excelFile)) {
+                    log.info("Process {} was already enriched with {}, skip it", process.getId(), excelFile);
+                    spreadsheetTask.cancel(true);
+                    return PluginReturnValue.FINISH;
                 }
+            } catch (IOException e) {
+                spreadsheetTask.cancel(true);
+                log.error(e);
+                return PluginReturnValue.ERROR;
             }
+        }
 
-            // find out the first data row
-            while (rowCounter < rowDataStart - 1) {
-                headerRow = rowIterator.next();
-                rowCounter++;
-            }
+        Fileformat fileformat = null;
+        DigitalDocument digitalDocument = null;
+        DocStruct logical = null;
+        try {
+            // read mets file
+            fileformat = process.readMetadataFile();
+            digitalDocument = fileformat.getDigitalDocument();
+            logical = digitalDocument.getLogicalDocStruct();
 
-            while (rowIterator.hasNext() && rowCounter < rowDataEnd) {
-                Map<Integer, String> rowMap = new HashMap<>();
-                Row row = rowIterator.next();
-                rowCounter++;
-                int lastColumn = row.getLastCellNum();
-                if (lastColumn == -1) {
-                    continue;
-                }
-                for (int cn = 0; cn < lastColumn; cn++) {
-                    Cell cell = row.getCell(cn, MissingCellPolicy.CREATE_NULL_AS_BLANK);
-                    String value = "";
-                    switch (cell.getCellType()) {
-                        case BOOLEAN:
-                            value = cell.getBooleanCellValue() ? "true" : "false";
-                            break;
-                        case FORMULA:
-                            CellValue cellValue = evaluator.evaluate(cell);
-                            switch (cellValue.getCellType()) {
-                                case NUMERIC:
-                                    value = String.valueOf((long) cell.getNumericCellValue());
-                                    break;
-                                case STRING:
-                                    value = cell.getStringCellValue();
-                                    break;
-                                default:
-                                    value = "";
-                                    break;
-                            }
-                            break;
-                        case NUMERIC:
-                            double val = cell.getNumericCellValue();
-                            String stringValue = String.valueOf(val);
-                            if (stringValue.endsWith(".0")) {
-                                value = String.valueOf((long) cell.getNumericCellValue());
-                            } else {
-                                value = stringValue;
-                            }
-                            break;
-                        case STRING:
-                            value = cell.getStringCellValue();
-                            break;
-                        default:
-                            value = "";
-                            break;
-                    }
-                    rowMap.put(cn, value);
-                }
+        } catch (ReadException | PreferencesException | IOException | SwapException e) {
+            spreadsheetTask.cancel(true);
+            log.error(e);
+            return PluginReturnValue.ERROR;
+        }
 
-                String identifier = rowMap.get(headerOrder.get(idColumn));
-                completeMap.put(identifier, rowMap);
+        // the spreadsheet was read while waiting for the lock and the mets file
+        SpreadsheetIndex spreadsheet = null;
+        try {
+            spreadsheet = spreadsheetTask.get();
+        } catch (ExecutionException e) {
+            log.error("Cannot read {}", excelFile, e.getCause());
+            return PluginReturnValue.ERROR;
+        } catch (InterruptedException e) {
+            spreadsheetTask.cancel(true);
+            Thread.currentThread().interrupt();
+            return PluginReturnValue.ERROR;
+        }
+        Map<String, Integer> headerOrder = spreadsheet.getHeaderOrder();
+
+        // find structure elements on all levels for each row
+        MetadataType identifierType = prefs.getMetadataTypeByName(ec.getDocstructIdentifier());
+        if (identifierType == null) {
+            log.error("Metadata type {} is not defined in the ruleset", ec.getDocstructIdentifier());
+            return PluginReturnValue.ERROR;
+        }
+        DocStructIndex index = new DocStructIndex(logical, identifierType);
+
+        for (String docstructId : index.getIdentifiers()) {
+            // search for excel metadata with this identifier
+            Map<Integer, String> rowMap = spreadsheet.getRow(docstructId);
+            if (rowMap == null) {
+                log.info("Skip import for " + docstructId);
+                continue;
+            }
+            for (DocStruct matched : index.getDocStructs(docstructId)) {
+                enrichDocStruct(matched, rowMap, headerOrder);
             }
+        }
 
-        } catch (Exception e) {
+        //  save mets file
+        try {
+            if (journal != null) {
+                journal.markStarted(process.getId(), excelFile);
+            }
+            process.writeMetadataFile(fileformat);
+        } catch (WriteException | PreferencesException | IOException | SwapException e) {
             log.error(e);
             return PluginReturnValue.ERROR;
-        } finally {
-            if (fileInputStream != null) {
-                try {
-                    fileInputStream.close();
-                } catch (IOException e) {
-                    log.error(e);
-                    return PluginReturnValue.ERROR;
-                }
+        }
+
+        if (journal != null) {
+            try {
+                journal.markCompleted(process.getId(), excelFile);
+            } catch (IOException e) {
+                // the mets file is saved, the process is only enriched again if a bulk run gets resumed
+                log.error("Process {} was enriched, but the journal could not be updated", process.getId(), e);
             }
         }
 
-        // find structure element for each row
-        List<DocStruct> children = logical.getAllChildrenAsFlatList();
+        return PluginReturnValue.FINISH;
+    }
 
-        MetadataType identifierType = prefs.getMetadataTypeByName(ec.getDocstructIdentifier());
+    /**
+     * write the metadata of all structure elements into the file PROCESSNAME.xlsx in the configured folder, so that it can be edited and imported
+     * again
+     *
+     * @return
+     */
 
-        for (DocStruct child : children) {
-            // get identifier from docstruct
-            List<? extends Metadata> md = child.getAllMetadataByType(identifierType);
-            if (md != null && !md.isEmpty()) {
-                // search for excel metadata with this identifier
-                String docstructId = md.get(0).getValue();
-                Map<Integer, String> rowMap = completeMap.get(docstructId);
-                // add  metadata
-                if (rowMap == null) {
-                    log.info("Skip import for " + docstructId);
-                    continue;
-                }
+    private PluginReturnValue exportMetadata() {
+        DocStruct logical = null;
+        try {
+            logical = process.readMetadataFile().getDigitalDocument().getLogicalDocStruct();
+        } catch (ReadException | PreferencesException | IOException | SwapException e) {
+            log.error(e);
+            return PluginReturnValue.ERROR;
+        }
 
-                for (MetadataMappingObject mmo : ec.getMetadataList()) {
+        Path destination;
+        // its always null unless we are in a junit test
+        if (excelFile == null) {
+            String folder = getExcelFolder();
+            if (folder == null) {
+                log.error("No export folder found for process {}", process.getId());
+                return PluginReturnValue.ERROR;
+            }
+            destination = Paths.get(folder, process.getTitel() + ".xlsx");
+        } else {
+            destination = Paths.get(excelFile);
+        }
+        try {
+            Files.createDirectories(destination.getParent());
+            try (SpreadsheetExporter exporter = new SpreadsheetExporter(ec, destination)) {
+                exporter.addDocStructs(logical, prefs);
+                exporter.finish();
+            }
+        } catch (IOException e) {
+            log.error(e);
+            return PluginReturnValue.ERROR;
+        }
+        SpreadsheetIndexCache.invalidate(destination);
+        return PluginReturnValue.FINISH;
+    }
 
-                    String metadataValue = rowMap.get(headerOrder.get(mmo.getHeaderName()));
-                    String identifier = null;
-                    if (mmo.getNormdataHeaderName() != null) {
-                        identifier = rowMap.get(headerOrder.get(mmo.getNormdataHeaderName()));
-                    }
-                    MetadataType type = prefs.getMetadataTypeByName(mmo.getRulesetName());
-                    // TODO remove/overwrite/skip existing fields?
-                    List<? extends Metadata> mdl = child.getAllMetadataByType(type);
-                    if (mdl != null && !mdl.isEmpty()) {
-                        Metadata existingMetadata = mdl.get(0);
-                        existingMetadata.setValue(metadataValue);
-                    } else if (StringUtils.isNotBlank(metadataValue)) {
-                        try {
-                            Metadata metadata = new Metadata(type);
-                            metadata.setValue(metadataValue);
-                            if (StringUtils.isNotBlank(identifier)) {
-                                metadata.setAutorityFile("gnd", "http://d-nb.info/gnd/", identifier);
-                            }
-                            child.addMetadata(metadata);
-                        } catch (MetadataTypeNotAllowedException e) {
-                            // metadata is not allowed, ignore it
-                        }
+    /**
+     * get the folder containing the excel files, either an absolute path or a folder of the process
+     *
+     * @return
+     */
 
+    private String getExcelFolder() {
+        // we have an existing folder
+        if (ec.getExcelFolder().contains("/")) {
+            return ec.getExcelFolder();
+        }
+        // we have a folder variable
+        try {
+            return process.getConfiguredImageFolder(ec.getExcelFolder());
+        } catch (IOException | SwapException | DAOException e) {
+            log.error(e);
+        }
+        return null;
+    }
+
+    /**
+     * add the metadata, persons and groups of a row to the matched structure element or, depending on the configured docType, to its anchor
+     *
+     * @param matched the element containing the identifier of the row
+     * @param rowMap
+     * @param headerOrder
+     */
+
+    /**
+     * write the row into the structure element. By default the first existing field of a type is overwritten and persons and groups are added. With
+     * replaceExisting, the n-th mapping of a type overwrites the n-th existing field, person or group including its normdata, like in the export.
+     */
+
+    private void enrichDocStruct(DocStruct matched, Map<Integer, String> rowMap, Map<String, Integer> headerOrder) {
+        boolean replace = ec.isReplaceExisting();
+        MappingOccurrences occurrences = new MappingOccurrences();
+        for (MetadataMappingObject mmo : ec.getMetadataList()) {
+            DocStruct target = DocStructIndex.getTarget(matched, mmo.getDocType());
+            MetadataType type = prefs.getMetadataTypeByName(mmo.getRulesetName());
+            if (target == null || type == null) {
+                continue;
+            }
+            int occurrence = occurrences.next("metadata", mmo.getDocType(), mmo.getRulesetName());
+            String metadataValue = getValue(rowMap, headerOrder, mmo.getHeaderName());
+            String identifier = getValue(rowMap, headerOrder, mmo.getNormdataHeaderName());
+            Metadata existingMetadata = MappingOccurrences.get(target.getAllMetadataByType(type), replace ? occurrence : 0);
+            if (existingMetadata != null) {
+                existingMetadata.setValue(metadataValue);
+                if (replace && mmo.getNormdataHeaderName() != null) {
+                    updateAuthority(existingMetadata, identifier);
+                }
+            } else if (StringUtils.isNotBlank(metadataValue)) {
+                try {
+                    Metadata metadata = new Metadata(type);
+                    metadata.setValue(metadataValue);
+                    if (StringUtils.isNotBlank(identifier)) {
+                        metadata.setAutorityFile("gnd", "http://d-nb.info/gnd/", identifier);
                     }
+                    target.addMetadata(metadata);
+                } catch (MetadataTypeNotAllowedException e) {
+                    // metadata is not allowed, ignore it
                 }
+            }
+        }
 
-                for (PersonMappingObject mmo : ec.getPersonList()) {
-                    String firstname = "";
-                    String lastname = "";
-                    if (mmo.isSplitName()) {
-                        String name = rowMap.get(headerOrder.get(mmo.getHeaderName()));
-                        if (StringUtils.isNotBlank(name)) {
-                            if (name.contains(mmo.getSplitChar())) {
-                                if (mmo.isFirstNameIsFirst()) {
-                                    firstname = name.substring(0, name.lastIndexOf(mmo.getSplitChar()));
-                                    lastname = name.substring(name.lastIndexOf(mmo.getSplitChar()));
-                                } else {
-                                    lastname = name.substring(0, name.lastIndexOf(mmo.getSplitChar())).trim();
-                                    firstname = name.substring(name.lastIndexOf(mmo.getSplitChar()) + 1).trim();
-                                }
-                            } else {
-                                lastname = name;
-                            }
-                        }
-                    } else {
-                        firstname = rowMap.get(headerOrder.get(mmo.getFirstnameHeaderName()));
-                        lastname = rowMap.get(headerOrder.get(mmo.getLastnameHeaderName()));
-                    }
+        for (PersonMappingObject pmo : ec.getPersonList()) {
+            DocStruct target = DocStructIndex.getTarget(matched, pmo.getDocType());
+            MetadataType type = prefs.getMetadataTypeByName(pmo.getRulesetName());
+            if (target == null || type == null) {
+                continue;
+            }
+            int occurrence = occurrences.next("person", pmo.getDocType(), pmo.getRulesetName());
+            try {
+                Person p = createPerson(pmo, rowMap, headerOrder);
+                if (isEmpty(p)) {
+                    continue;
+                }
+                Person existingPerson = replace ? MappingOccurrences.get(target.getAllPersonsByType(type), occurrence) : null;
+                if (existingPerson != null) {
+                    replacePerson(existingPerson, p, pmo);
+                } else {
+                    target.addPerson(p);
+                }
+            } catch (MetadataTypeNotAllowedException e) {
+                log.info(e);
+                // Metadata is not known or not allowed
+            }
+        }
 
-                    String identifier = null;
+        for (GroupMappingObject gmo : ec.getGroupList()) {
+            DocStruct target = DocStructIndex.getTarget(matched, gmo.getDocType());
+            MetadataGroupType groupType = prefs.getMetadataGroupTypeByName(gmo.getRulesetName());
+            if (target == null || groupType == null) {
+                continue;
+            }
+            int occurrence = occurrences.next("group", gmo.getDocType(), gmo.getRulesetName());
+            try {
+                MetadataGroup group = replace ? MappingOccurrences.get(target.getAllMetadataGroupsByType(groupType), occurrence) : null;
+                boolean newGroup = group == null;
+                if (newGroup) {
+                    group = new MetadataGroup(groupType);
+                }
+                boolean hasContent = false;
+                // a new group contains an empty field for each type, an existing group is overwritten like in the export
+                for (MetadataMappingObject mmo : gmo.getMetadataList()) {
+                    String metadataValue = getValue(rowMap, headerOrder, mmo.getHeaderName());
+                    if (StringUtils.isBlank(metadataValue)) {
+                        continue;
+                    }
+                    hasContent = true;
+                    Metadata metadata = MappingOccurrences.get(group.getMetadataByType(mmo.getRulesetName()), 0);
+                    if (metadata == null) {
+                        metadata = new Metadata(prefs.getMetadataTypeByName(mmo.getRulesetName()));
+                        group.addMetadata(metadata);
+                    }
+                    metadata.setValue(metadataValue);
                     if (mmo.getNormdataHeaderName() != null) {
-                        identifier = rowMap.get(headerOrder.get(mmo.getNormdataHeaderName()));
+                        updateAuthority(metadata, getValue(rowMap, headerOrder, mmo.getNormdataHeaderName()));
                     }
-                    if (StringUtils.isNotBlank(mmo.getRulesetName())) {
-                        try {
-                            Person p = new Person(prefs.getMetadataTypeByName(mmo.getRulesetName()));
-                            p.setFirstname(firstname);
-                            p.setLastname(lastname);
-
-                            if (identifier != null) {
-                                p.setAutorityFile("gnd", "http://d-nb.info/gnd/", identifier);
-                            }
-
-                            child.addPerson(p);
-
-                            //                            logical.addPerson(p);
-                        } catch (MetadataTypeNotAllowedException e) {
-                            log.info(e);
-                            // Metadata is not known or not allowed
-                        }
+                }
+                for (PersonMappingObject pmo : gmo.getPersonList()) {
+                    Person p = createPerson(pmo, rowMap, headerOrder);
+                    if (isEmpty(p)) {
+                        continue;
                     }
+                    hasContent = true;
+                    Person existingPerson = MappingOccurrences.get(group.getPersonByType(pmo.getRulesetName()), 0);
+                    if (existingPerson != null) {
+                        replacePerson(existingPerson, p, pmo);
+                    } else {
+                        group.addPerson(p);
+                    }
+                }
+                if (newGroup && hasContent) {
+                    target.addMetadataGroup(group);
                 }
+            } catch (MetadataTypeNotAllowedException | DocStructHasNoTypeException e) {
+                log.info(e);
+                // group is not known or not allowed
+            }
+        }
+    }
 
+    private Person createPerson(PersonMappingObject pmo, Map<Integer, String> rowMap, Map<String, Integer> headerOrder)
+            throws MetadataTypeNotAllowedException {
+        String firstname = "";
+        String lastname = "";
+        if (pmo.isSplitName()) {
+            String name = getValue(rowMap, headerOrder, pmo.getHeaderName());
+            if (StringUtils.isNotBlank(name)) {
+                if (name.contains(pmo.getSplitChar())) {
+                    // split like the export joins the names
+                    int splitPosition = name.lastIndexOf(pmo.getSplitChar());
+                    String firstPart = name.substring(0, splitPosition).trim();
+                    String lastPart = name.substring(splitPosition + pmo.getSplitChar().length()).trim();
+                    if (pmo.isFirstNameIsFirst()) {
+                        firstname = firstPart;
+                        lastname = lastPart;
+                    } else {
+                        lastname = firstPart;
+                        firstname = lastPart;
+                    }
+                } else {
+                    lastname = name;
+                }
             }
+        } else {
+            firstname = getValue(rowMap, headerOrder, pmo.getFirstnameHeaderName());
+            lastname = getValue(rowMap, headerOrder, pmo.getLastnameHeaderName());
         }
 
-        //  save mets file
-        try {
-            process.writeMetadataFile(fileformat);
-        } catch (WriteException | PreferencesException | IOException | SwapException e) {
-            log.error(e);
-            return PluginReturnValue.ERROR;
+        String identifier = getValue(rowMap, headerOrder, pmo.getNormdataHeaderName());
+
+        Person p = new Person(prefs.getMetadataTypeByName(pmo.getRulesetName()));
+        p.setFirstname(firstname);
+        p.setLastname(lastname);
+
+        if (StringUtils.isNotBlank(identifier)) {
+            p.setAutorityFile("gnd", "http://d-nb.info/gnd/", identifier);
         }
+        return p;
+    }
 
-        return PluginReturnValue.FINISH;
+    private static boolean isEmpty(Person p) {
+        return StringUtils.isBlank(p.getFirstname()) && StringUtils.isBlank(p.getLastname());
+    }
+
+    /**
+     * overwrite an existing person, if a normdata column is configured its cell replaces the authority of the person
+     */
+
+    private static void replacePerson(Person existing, Person p, PersonMappingObject pmo) {
+        existing.setFirstname(p.getFirstname());
+        existing.setLastname(p.getLastname());
+        if (pmo.getNormdataHeaderName() != null) {
+            updateAuthority(existing, p.getAuthorityValue());
+        }
+    }
+
+    /**
+     * write the normdata cell into an existing field, an empty cell removes the authority. An unchanged value keeps the authority source.
+     */
+
+    private static void updateAuthority(Metadata md, String identifier) {
+        if (StringUtils.isBlank(identifier)) {
+            md.setAutorityFile(null, null, null);
+        } else if (!identifier.equals(md.getAuthorityValue())) {
+            md.setAutorityFile("gnd", "http://d-nb.info/gnd/", identifier);
+        }
+    }
+
+    private static String getValue(Map<Integer, String> rowMap, Map<String, Integer> headerOrder, String headerName) {
+        if (headerName == null) {
+            return null;
+        }
+        return rowMap.get(headerOrder.get(headerName));
+    }
+
+    private static ExecutorService createSpreadsheetReader() {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(100), r -> {
+            Thread thread = new Thread(r, "excel-enrichment-reader-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     public static final DirectoryStream.Filter<Path> EXCEL_FILTER = new DirectoryStream.Filter<Path>() {
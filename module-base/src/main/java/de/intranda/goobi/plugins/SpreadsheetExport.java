@@ -0,0 +1,140 @@
+package de.intranda.goobi.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.goobi.beans.Process;
+
+import de.intranda.goobi.plugins.utils.ExcelConfig;
+import de.intranda.goobi.plugins.utils.SpreadsheetExporter;
+import de.intranda.goobi.plugins.utils.SpreadsheetIndexCache;
+import de.sub.goobi.helper.exceptions.SwapException;
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.Fileformat;
+import ugh.dl.Prefs;
+import ugh.exceptions.PreferencesException;
+import ugh.exceptions.ReadException;
+import ugh.fileformats.mets.MetsMods;
+
+/**
+ * Writes the metadata of many processes into a single spreadsheet. The file can be edited and imported again by the enrichment steps of the
+ * processes. The rows are streamed into the file, so the number of processes is only limited by the size of the spreadsheet.
+ */
+@Log4j2
+public class SpreadsheetExport {
+
+    private final ExcelConfig ec;
+
+    public SpreadsheetExport(ExcelConfig ec) {
+        this.ec = ec;
+    }
+
+    /**
+     * write the structure elements of all processes into the spreadsheet. Processes whose metadata cannot be read are skipped.
+     *
+     * @param destination
+     * @param processes
+     * @return a message for each skipped process
+     * @throws IOException
+     */
+
+    public List<String> export(Path destination, List<Process> processes) throws IOException {
+        return export(destination, processes, process -> "process " + process.getTitel(), (exporter, process) -> {
+            Fileformat fileformat = process.readMetadataFile();
+            exporter.addDocStructs(fileformat.getDigitalDocument().getLogicalDocStruct(), process.getRegelsatz().getPreferences());
+        });
+    }
+
+    /**
+     * write the structure elements of all METS files into the spreadsheet. Files that cannot be read are skipped.
+     *
+     * @param destination
+     * @param metsFiles
+     * @param prefs ruleset of all files
+     * @return a message for each skipped file
+     * @throws IOException
+     */
+
+    public List<String> exportFiles(Path destination, List<Path> metsFiles, Prefs prefs) throws IOException {
+        return export(destination, metsFiles, Path::toString, (exporter, metsFile) -> {
+            Fileformat fileformat = new MetsMods(prefs);
+            fileformat.read(metsFile.toString());
+            exporter.addDocStructs(fileformat.getDigitalDocument().getLogicalDocStruct(), prefs);
+        });
+    }
+
+    private <T> List<String> export(Path destination, List<T> sources, Function<T, String> names, MetadataReader<T> reader) throws IOException {
+        List<String> problems = new ArrayList<>();
+        createParentFolder(destination);
+        try (SpreadsheetExporter exporter = new SpreadsheetExporter(ec, destination)) {
+            for (T source : sources) {
+                try {
+                    reader.addTo(exporter, source);
+                } catch (ReadException | PreferencesException | IOException | SwapException e) {
+                    log.error(e);
+                    problems.add("Metadata of " + names.apply(source) + " could not be read");
+                }
+            }
+            exporter.finish();
+        }
+        SpreadsheetIndexCache.invalidate(destination);
+        return problems;
+    }
+
+    private static void createParentFolder(Path destination) throws IOException {
+        Path parent = destination.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+    }
+
+    @FunctionalInterface
+    private interface MetadataReader<T> {
+        void addTo(SpreadsheetExporter exporter, T source) throws ReadException, PreferencesException, IOException, SwapException;
+    }
+
+    /**
+     * Export metadata files from the command line.
+     *
+     * Usage: SpreadsheetExport &lt;plugin configuration&gt; &lt;ruleset&gt; &lt;spreadsheet&gt; &lt;meta.xml&gt; [meta.xml ...]
+     *
+     * The first &lt;config&gt; block of the plugin configuration is used.
+     *
+     * @param args
+     */
+
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.err.println("Usage: SpreadsheetExport <plugin configuration> <ruleset> <spreadsheet> <meta.xml> [meta.xml ...]");
+            System.exit(2);
+        }
+        try {
+            ExcelConfig ec = ExcelConfig.fromFile(new File(args[0]));
+
+            Prefs prefs = new Prefs();
+            prefs.loadPrefs(args[1]);
+
+            Path destination = Paths.get(args[2]);
+            List<Path> metsFiles = new ArrayList<>();
+            for (int i = 3; i < args.length; i++) {
+                metsFiles.add(Paths.get(args[i]));
+            }
+            List<String> problems = new SpreadsheetExport(ec).exportFiles(destination, metsFiles, prefs);
+            for (String problem : problems) {
+                System.out.println("Problem: " + problem);
+            }
+            System.out.println("Exported " + (metsFiles.size() - problems.size()) + " of " + metsFiles.size() + " files into " + destination);
+            System.exit(problems.isEmpty() ? 0 : 1);
+        } catch (ConfigurationException | IOException | PreferencesException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+    }
+}
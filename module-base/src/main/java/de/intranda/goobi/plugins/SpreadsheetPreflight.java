@@ -0,0 +1,158 @@
+package de.intranda.goobi.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.goobi.beans.Process;
+
+import de.intranda.goobi.plugins.utils.DocStructIndex;
+import de.intranda.goobi.plugins.utils.ExcelConfig;
+import de.intranda.goobi.plugins.utils.PreflightReport;
+import de.intranda.goobi.plugins.utils.SpreadsheetIndex;
+import de.intranda.goobi.plugins.utils.SpreadsheetIndexCache;
+import de.sub.goobi.helper.exceptions.SwapException;
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.DocStruct;
+import ugh.dl.Fileformat;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+import ugh.exceptions.PreferencesException;
+import ugh.exceptions.ReadException;
+import ugh.fileformats.mets.MetsMods;
+
+/**
+ * Checks a spreadsheet before the enrichment steps are executed. The file is read once, validated against the configuration and matched against
+ * the structure elements of the given processes. The parsed spreadsheet is taken from and kept in the {@link SpreadsheetIndexCache} of the
+ * running JVM. When called from the command line, this cache ends with the check, so the command line check only validates the file.
+ */
+@Log4j2
+public class SpreadsheetPreflight {
+
+    private final ExcelConfig ec;
+
+    public SpreadsheetPreflight(ExcelConfig ec) {
+        this.ec = ec;
+    }
+
+    /**
+     * read and validate the spreadsheet, a cached index of the unchanged file is used if it exists
+     *
+     * @param excelFile
+     * @return the report without any process matches
+     * @throws IOException
+     */
+
+    public PreflightReport check(Path excelFile) throws IOException {
+        SpreadsheetIndex index = SpreadsheetIndexCache.getIndex(excelFile, ec);
+        PreflightReport report = new PreflightReport(index);
+        report.getProblems().addAll(index.validate(ec));
+        if (index.getRowsWithoutIdentifier() > 0) {
+            // usually formatted but empty rows at the end of the sheet
+            report.getWarnings().add(index.getRowsWithoutIdentifier() + " row(s) without identifier are ignored");
+        }
+        return report;
+    }
+
+    /**
+     * read and validate the spreadsheet and search the structure elements of each process
+     *
+     * @param excelFile
+     * @param processes
+     * @return
+     * @throws IOException
+     */
+
+    public PreflightReport check(Path excelFile, List<Process> processes) throws IOException {
+        PreflightReport report = check(excelFile);
+        for (Process process : processes) {
+            try {
+                Fileformat fileformat = process.readMetadataFile();
+                match(report, process.getTitel(), fileformat.getDigitalDocument().getLogicalDocStruct(), process.getRegelsatz().getPreferences());
+            } catch (ReadException | PreferencesException | IOException | SwapException e) {
+                log.error(e);
+                report.getProblems().add("Metadata of process " + process.getTitel() + " could not be read");
+            }
+        }
+        return report;
+    }
+
+    /**
+     * add all structure elements of the logical tree to the report, whose identifier is used in the spreadsheet
+     *
+     * @param report
+     * @param processName
+     * @param logical
+     * @param prefs
+     */
+
+    public void match(PreflightReport report, String processName, DocStruct logical, Prefs prefs) {
+        MetadataType identifierType = prefs.getMetadataTypeByName(ec.getDocstructIdentifier());
+        if (identifierType == null) {
+            report.getProblems().add("Metadata type " + ec.getDocstructIdentifier() + " is not defined in the ruleset of " + processName);
+            return;
+        }
+        DocStructIndex docstructs = new DocStructIndex(logical, identifierType);
+        for (String identifier : docstructs.getIdentifiers()) {
+            if (report.getIndex().getRow(identifier) != null) {
+                report.addMatch(identifier, processName);
+            }
+        }
+    }
+
+    /**
+     * Check a spreadsheet from the command line.
+     *
+     * Usage: SpreadsheetPreflight &lt;plugin configuration&gt; &lt;ruleset&gt; &lt;spreadsheet&gt; [meta.xml ...]
+     *
+     * The first &lt;config&gt; block of the plugin configuration is used.
+     *
+     * @param args
+     */
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: SpreadsheetPreflight <plugin configuration> <ruleset> <spreadsheet> [meta.xml ...]");
+            System.exit(2);
+        }
+        try {
+            ExcelConfig ec = ExcelConfig.fromFile(new File(args[0]));
+
+            Prefs prefs = new Prefs();
+            prefs.loadPrefs(args[1]);
+
+            SpreadsheetPreflight preflight = new SpreadsheetPreflight(ec);
+            PreflightReport report = preflight.check(Paths.get(args[2]));
+            for (int i = 3; i < args.length; i++) {
+                Fileformat fileformat = new MetsMods(prefs);
+                fileformat.read(args[i]);
+                preflight.match(report, args[i], fileformat.getDigitalDocument().getLogicalDocStruct(), prefs);
+            }
+
+            System.out.println("Spreadsheet: " + report.getIndex().getExcelFile());
+            System.out.println("Rows: " + report.getIndex().getRows().size());
+            for (String problem : report.getProblems()) {
+                System.out.println("Problem: " + problem);
+            }
+            for (String warning : report.getWarnings()) {
+                System.out.println("Warning: " + warning);
+            }
+            for (Map.Entry<String, List<String>> entry : report.getMatches().entrySet()) {
+                System.out.println("Match: " + entry.getKey() + " -> " + String.join(", ", entry.getValue()));
+            }
+            if (args.length > 3) {
+                for (String identifier : report.getUnmatchedIdentifiers()) {
+                    System.out.println("Unmatched: " + identifier);
+                }
+            }
+            System.exit(report.isValid() ? 0 : 1);
+        } catch (ConfigurationException | IOException | PreferencesException | ReadException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package de.intranda.goobi.plugins.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataType;
+
+/**
+ * Index of all logical structure elements by the value of their identifier metadata. The index is created by a single traversal of the complete
+ * tree, it contains the anchor, the volume or monograph and all children.
+ */
+public class DocStructIndex {
+
+    public static final String DOCTYPE_ANCHOR = "anchor";
+    public static final String DOCTYPE_CHILD = "child";
+
+    private final Map<String, List<DocStruct>> docstructs = new LinkedHashMap<>();
+
+    /**
+     * create the index for the given logical root element
+     *
+     * @param root the top element of the logical tree, the anchor in case of multivolume works or periodicals
+     * @param identifierType the metadata type containing the identifier
+     */
+
+    public DocStructIndex(DocStruct root, MetadataType identifierType) {
+        Deque<DocStruct> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            DocStruct ds = stack.pop();
+            List<? extends Metadata> md = ds.getAllMetadataByType(identifierType);
+            if (md != null && !md.isEmpty()) {
+                String identifier = md.get(0).getValue();
+                docstructs.computeIfAbsent(identifier, k -> new ArrayList<>()).add(ds);
+            }
+            List<DocStruct> children = ds.getAllChildren();
+            if (children != null) {
+                // add children in reverse order to visit them in document order
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    stack.push(children.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * get all structure elements with the given identifier
+     *
+     * @param identifier
+     * @return the elements in document order or an empty list
+     */
+
+    public List<DocStruct> getDocStructs(String identifier) {
+        List<DocStruct> list = docstructs.get(identifier);
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        return list;
+    }
+
+    /**
+     * get all identifiers in document order
+     *
+     * @return
+     */
+
+    public Set<String> getIdentifiers() {
+        return docstructs.keySet();
+    }
+
+    /**
+     * find the element to enrich for the configured docType. For 'anchor' the anchor of the matched element is used, for all other values the
+     * matched element itself.
+     *
+     * @param matched the element containing the identifier
+     * @param docType
+     * @return the element or null, if the matched element has no anchor
+     */
+
+    public static DocStruct getTarget(DocStruct matched, String docType) {
+        if (!DOCTYPE_ANCHOR.equals(docType)) {
+            return matched;
+        }
+        DocStruct ds = matched;
+        while (ds != null) {
+            if (ds.getType() != null && ds.getType().isAnchor()) {
+                return ds;
+            }
+            ds = ds.getParent();
+        }
+        return null;
+    }
+}
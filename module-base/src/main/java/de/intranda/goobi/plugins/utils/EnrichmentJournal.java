@@ -0,0 +1,240 @@
+package de.intranda.goobi.plugins.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Write-ahead journal of the enrichments that were done. Before a METS file gets written, a STARTED line is appended, after the file was saved
+ * successfully a DONE line follows. Each line is flushed to disk before the method returns.
+ *
+ * A bulk run that was interrupted can be restarted, all processes that are marked as DONE for the same spreadsheet are skipped. A STARTED line
+ * without a matching DONE line marks a write that was interrupted, this process gets enriched again.
+ *
+ * The file is read again whenever it was changed outside of this instance, so removing or editing it forces a new enrichment without a
+ * restart. It is compacted to the DONE lines when too many other lines accumulated.
+ *
+ * Several Goobi nodes can share the same journal. Appending and compacting hold a file lock on the lock file next to the journal, so that no node
+ * appends to the old file while it is replaced by the compacted one. The lock file is never removed, otherwise two nodes could lock different
+ * files.
+ */
+@Log4j2
+public class EnrichmentJournal {
+
+    private static final String STARTED = "STARTED";
+    private static final String DONE = "DONE";
+
+    /** compact the journal when it contains more than this number of lines beside the DONE lines */
+    private static final int COMPACTION_THRESHOLD = 1000;
+
+    private static final Map<Path, EnrichmentJournal> journals = new HashMap<>();
+
+    private final Path journalFile;
+
+    /** locked while the journal is written, the journal itself can't be locked as compacting replaces it */
+    private final Path lockFile;
+
+    private final Set<String> completed = new LinkedHashSet<>();
+
+    /** size and modification date of the file when it was last read or written, a difference means somebody else changed it */
+    private long knownSize = -1;
+    private long knownModified = -1;
+
+    private int lineCount;
+
+    /**
+     * get the journal for the given file, all processes using the same file share one instance
+     *
+     * @param journalFile
+     * @return
+     * @throws IOException
+     */
+
+    public static synchronized EnrichmentJournal getInstance(String journalFile) throws IOException {
+        Path path = Paths.get(journalFile).toAbsolutePath().normalize();
+        EnrichmentJournal journal = journals.get(path);
+        if (journal == null) {
+            journal = new EnrichmentJournal(path);
+            journals.put(path, journal);
+        }
+        return journal;
+    }
+
+    private EnrichmentJournal(Path journalFile) throws IOException {
+        this.journalFile = journalFile;
+        this.lockFile = Paths.get(journalFile + ".lock");
+        if (journalFile.getParent() != null) {
+            Files.createDirectories(journalFile.getParent());
+        }
+        reloadIfChanged();
+    }
+
+    /**
+     * check if the process was already enriched with the current version of the spreadsheet
+     *
+     * @param processId
+     * @param excelFile
+     * @return
+     * @throws IOException
+     */
+
+    public synchronized boolean isCompleted(int processId, String excelFile) throws IOException {
+        reloadIfChanged();
+        return completed.contains(createKey(processId, excelFile));
+    }
+
+    /**
+     * record that the METS file of the process is about to be written
+     *
+     * @param processId
+     * @param excelFile
+     * @throws IOException
+     */
+
+    public synchronized void markStarted(int processId, String excelFile) throws IOException {
+        reloadIfChanged();
+        append(STARTED + "\t" + createKey(processId, excelFile));
+    }
+
+    /**
+     * record that the METS file of the process was written successfully
+     *
+     * @param processId
+     * @param excelFile
+     * @throws IOException
+     */
+
+    public synchronized void markCompleted(int processId, String excelFile) throws IOException {
+        reloadIfChanged();
+        String key = createKey(processId, excelFile);
+        append(DONE + "\t" + key);
+        completed.add(key);
+        compactIfNeeded();
+    }
+
+    /**
+     * the key contains the modification date of the spreadsheet, a changed file leads to a new enrichment
+     */
+
+    private String createKey(int processId, String excelFile) throws IOException {
+        Path path = Paths.get(excelFile).toAbsolutePath().normalize();
+        return processId + "\t" + path + "\t" + Files.getLastModifiedTime(path).toMillis();
+    }
+
+    private void append(String line) throws IOException {
+        try (FileChannel lockChannel = openLockFile(); FileLock lock = lockChannel.lock()) {
+            try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            lineCount++;
+            if (knownSize >= 0) {
+                knownSize += (line + "\n").getBytes(StandardCharsets.UTF_8).length;
+            }
+            // a different size on the next access means that another node appended to the file as well
+            knownModified = Files.getLastModifiedTime(journalFile).toMillis();
+            if (knownSize != Files.size(journalFile)) {
+                knownSize = -1;
+            }
+        }
+    }
+
+    private FileChannel openLockFile() throws IOException {
+        return FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * read the journal again, if it was changed, removed or edited outside of this instance
+     */
+
+    private void reloadIfChanged() throws IOException {
+        if (!Files.exists(journalFile)) {
+            completed.clear();
+            lineCount = 0;
+            knownSize = 0;
+            knownModified = -1;
+            return;
+        }
+        long size = Files.size(journalFile);
+        long modified = Files.getLastModifiedTime(journalFile).toMillis();
+        if (size != knownSize || modified != knownModified) {
+            load();
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * read the existing journal and report interrupted writes
+     */
+
+    private void load() throws IOException {
+        completed.clear();
+        Set<String> started = new LinkedHashSet<>();
+        List<String> lines = Files.readAllLines(journalFile, StandardCharsets.UTF_8);
+        for (String line : lines) {
+            int pos = line.indexOf('\t');
+            if (pos == -1) {
+                // incomplete last line of a crashed run
+                continue;
+            }
+            String status = line.substring(0, pos);
+            String key = line.substring(pos + 1);
+            if (STARTED.equals(status)) {
+                started.add(key);
+            } else if (DONE.equals(status)) {
+                started.remove(key);
+                completed.add(key);
+            }
+        }
+        for (String key : started) {
+            log.warn("Enrichment was interrupted while writing, process will be enriched again: {}", key);
+        }
+        lineCount = lines.size();
+        knownSize = Files.size(journalFile);
+        knownModified = Files.getLastModifiedTime(journalFile).toMillis();
+    }
+
+    /**
+     * replace the journal with the DONE lines only, if too many other lines accumulated
+     */
+
+    private void compactIfNeeded() throws IOException {
+        if (lineCount <= completed.size() + COMPACTION_THRESHOLD) {
+            return;
+        }
+        try (FileChannel lockChannel = openLockFile(); FileLock lock = lockChannel.lock()) {
+            // other nodes may have appended lines since the last read, they must be part of the compacted file
+            load();
+            if (lineCount > completed.size() + COMPACTION_THRESHOLD) {
+                compact();
+            }
+        }
+    }
+
+    private void compact() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String key : completed) {
+            sb.append(DONE).append('\t').append(key).append('\n');
+        }
+        FileHelper.writeAtomically(journalFile, sb.toString().getBytes(StandardCharsets.UTF_8));
+        lineCount = completed.size();
+        knownSize = Files.size(journalFile);
+        knownModified = Files.getLastModifiedTime(journalFile).toMillis();
+    }
+}
@@ -1,10 +1,14 @@
 package de.intranda.goobi.plugins.utils;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.commons.configuration.SubnodeConfiguration;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
 
 import lombok.Data;
 
@@ -23,6 +27,16 @@ public class ExcelConfig {
     private List<GroupMappingObject> groupList = new ArrayList<>();
     private String excelIdentifierColumn;
     private String excelFolder;
+    private String journalFile;
+    private int internCapacity;
+    private String mode;
+    private int exportRowWindow;
+    private boolean replaceExisting;
+    private boolean useFileLock;
+    private boolean prewarmSpreadsheets;
+    private boolean prewarmPolling;
+    private int prewarmInterval;
+    private int cacheSize;
 
     /**
      * loads the &lt;config&gt; block from xml file
@@ -35,6 +49,15 @@ public class ExcelConfig {
         firstLine = xmlConfig.getInt("/firstLine", 1);
         docstructIdentifier = xmlConfig.getString("/docstructIdentifier", null);
         excelFolder = xmlConfig.getString("/excelFolder","master");
+        journalFile = xmlConfig.getString("/journalFile", null);
+        mode = xmlConfig.getString("/mode", "import");
+        exportRowWindow = xmlConfig.getInt("/exportRowWindow", 100);
+        replaceExisting = xmlConfig.getBoolean("/replaceExisting", false);
+        useFileLock = xmlConfig.getBoolean("/useFileLock", false);
+        prewarmSpreadsheets = xmlConfig.getBoolean("/prewarmSpreadsheets", false);
+        prewarmPolling = xmlConfig.getBoolean("/prewarmSpreadsheets/@polling", false);
+        prewarmInterval = xmlConfig.getInt("/prewarmSpreadsheets/@interval", 30);
+        cacheSize = xmlConfig.getInt("/cacheSize", 20);
 
         excelIdentifierColumn = xmlConfig.getString("/excelIdentifierColumn", null);
 
@@ -42,32 +65,34 @@ public class ExcelConfig {
         rowHeader = xmlConfig.getInt("/rowHeader", 1);
         rowDataStart = xmlConfig.getInt("/rowDataStart", 2);
         rowDataEnd = xmlConfig.getInt("/rowDataEnd", 20000);
+        internCapacity = xmlConfig.getInt("/internCapacity", 10000);
 
-        List<HierarchicalConfiguration> mml = xmlConfig.configurationsAt("//metadata");
+        // only direct children, the fields inside of a group belong to the group
+        List<HierarchicalConfiguration> mml = xmlConfig.configurationsAt("metadata");
         for (HierarchicalConfiguration md : mml) {
             metadataList.add(getMetadata(md));
         }
 
-        List<HierarchicalConfiguration> pml = xmlConfig.configurationsAt("//person");
+        List<HierarchicalConfiguration> pml = xmlConfig.configurationsAt("person");
         for (HierarchicalConfiguration md : pml) {
             personList.add(getPersons(md));
         }
 
-        List<HierarchicalConfiguration> gml = xmlConfig.configurationsAt("//group");
+        List<HierarchicalConfiguration> gml = xmlConfig.configurationsAt("group");
         for (HierarchicalConfiguration md : gml) {
             String rulesetName = md.getString("@ugh");
             GroupMappingObject grp = new GroupMappingObject();
             grp.setRulesetName(rulesetName);
 
-            String docType = md.getString("@docType", "child");
+            String docType = md.getString("@docType", DocStructIndex.DOCTYPE_CHILD);
             grp.setDocType(docType);
-            List<HierarchicalConfiguration> subList = md.configurationsAt("//person");
+            List<HierarchicalConfiguration> subList = md.configurationsAt("person");
             for (HierarchicalConfiguration sub : subList) {
                 PersonMappingObject pmo = getPersons(sub);
                 grp.getPersonList().add(pmo);
             }
 
-            subList = md.configurationsAt("//metadata");
+            subList = md.configurationsAt("metadata");
             for (HierarchicalConfiguration sub : subList) {
                 MetadataMappingObject pmo = getMetadata(sub);
                 grp.getMetadataList().add(pmo);
@@ -78,12 +103,42 @@ public class ExcelConfig {
         }
     }
 
+    /**
+     * load the first &lt;config&gt; block of a plugin configuration file, e.g. for the command line tools
+     *
+     * @param configFile
+     * @return
+     * @throws ConfigurationException
+     */
+
+    public static ExcelConfig fromFile(File configFile) throws ConfigurationException {
+        return fromFile(configFile, "config[1]");
+    }
+
+    /**
+     * load a &lt;config&gt; block of a plugin configuration file
+     *
+     * @param configFile
+     * @param configPath xpath of the block, e.g. config[./step='name']
+     * @return
+     * @throws ConfigurationException
+     */
+
+    public static ExcelConfig fromFile(File configFile, String configPath) throws ConfigurationException {
+        XMLConfiguration xmlConfig = new XMLConfiguration(configFile);
+        xmlConfig.setExpressionEngine(new XPathExpressionEngine());
+        SubnodeConfiguration myconfig = xmlConfig.configurationAt(configPath);
+        myconfig.setExpressionEngine(new XPathExpressionEngine());
+        return new ExcelConfig(myconfig);
+    }
+
     private MetadataMappingObject getMetadata(HierarchicalConfiguration md) {
         MetadataMappingObject mmo = new MetadataMappingObject();
         mmo.setExcelColumn(md.getInteger("@column", null));
         mmo.setRulesetName(md.getString("@ugh"));
         mmo.setHeaderName(md.getString("@headerName", null));
         mmo.setNormdataHeaderName(md.getString("@normdataHeaderName", null));
+        mmo.setDocType(md.getString("@docType", DocStructIndex.DOCTYPE_CHILD));
         return mmo;
     }
 
@@ -103,6 +158,7 @@ public class ExcelConfig {
         pmo.setSplitChar(md.getString("splitChar", " "));
         pmo.setSplitName(md.getBoolean("splitName", false));
         pmo.setFirstNameIsFirst(md.getBoolean("splitName/@firstNameIsFirstPart", false));
+        pmo.setDocType(md.getString("@docType", DocStructIndex.DOCTYPE_CHILD));
         return pmo;
 
     }
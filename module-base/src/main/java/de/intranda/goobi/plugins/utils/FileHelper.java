@@ -0,0 +1,71 @@
+package de.intranda.goobi.plugins.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Helper methods to replace files without exposing partially written content to readers
+ */
+public class FileHelper {
+
+    private FileHelper() {
+    }
+
+    /**
+     * get the temporary file used while the destination is written
+     *
+     * @param destination
+     * @return
+     */
+
+    public static Path getTemporaryFile(Path destination) {
+        return destination.resolveSibling(destination.getFileName() + ".tmp");
+    }
+
+    /**
+     * write the content into a temporary file next to the destination and rename it afterwards, so that readers never see a partially written
+     * file
+     *
+     * @param destination
+     * @param content
+     * @throws IOException
+     */
+
+    public static void writeAtomically(Path destination, byte[] content) throws IOException {
+        Path tempFile = getTemporaryFile(destination);
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        moveAtomically(tempFile, destination);
+    }
+
+    /**
+     * replace the destination with the source file. If the file system does not support atomic moves, a regular replace is used.
+     *
+     * @param source
+     * @param destination
+     * @throws IOException
+     */
+
+    public static void moveAtomically(Path source, Path destination) throws IOException {
+        try {
+            Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, destination, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
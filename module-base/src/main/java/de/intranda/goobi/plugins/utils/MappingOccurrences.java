@@ -0,0 +1,43 @@
+package de.intranda.goobi.plugins.utils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts the mappings of a row that use the same ruleset name. The first mapping belongs to the first metadata of this type, the second mapping
+ * to the second metadata and so on. Export and import use the same counting, so that an exported spreadsheet is written back into the same
+ * fields.
+ */
+public class MappingOccurrences {
+
+    private final Map<String, Integer> occurrences = new HashMap<>();
+
+    /**
+     * get the position of the next mapping for this metadata, person or group
+     *
+     * @param kind metadata, person or group
+     * @param docType
+     * @param rulesetName
+     * @return the position, starting with 0
+     */
+
+    public int next(String kind, String docType, String rulesetName) {
+        return occurrences.merge(kind + "|" + docType + "|" + rulesetName, 1, Integer::sum) - 1;
+    }
+
+    /**
+     * get the element at the position
+     *
+     * @param list
+     * @param occurrence
+     * @return the element or null, if the list is shorter
+     */
+
+    public static <T> T get(List<? extends T> list, int occurrence) {
+        if (list == null || list.size() <= occurrence) {
+            return null;
+        }
+        return list.get(occurrence);
+    }
+}
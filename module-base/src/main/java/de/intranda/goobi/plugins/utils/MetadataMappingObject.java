@@ -12,4 +12,6 @@ public class MetadataMappingObject {
 
     private String normdataHeaderName;
 
+    private String docType;
+
 }
@@ -19,4 +19,6 @@ public class PersonMappingObject {
     private String splitChar;
     private boolean firstNameIsFirst;
 
+    private String docType;
+
 }
@@ -0,0 +1,51 @@
+package de.intranda.goobi.plugins.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Data;
+
+/**
+ * Result of a pre-flight check of a spreadsheet
+ */
+@Data
+public class PreflightReport {
+
+    /** the parsed spreadsheet, can be reused for the enrichment */
+    private final SpreadsheetIndex index;
+
+    /** configuration problems and inconsistent rows */
+    private final List<String> problems = new ArrayList<>();
+
+    /** findings that don't prevent the import, e.g. empty rows */
+    private final List<String> warnings = new ArrayList<>();
+
+    /** names of the processes containing a structure element for each identifier */
+    private final Map<String, List<String>> matches = new LinkedHashMap<>();
+
+    public void addMatch(String identifier, String processName) {
+        matches.computeIfAbsent(identifier, k -> new ArrayList<>()).add(processName);
+    }
+
+    /**
+     * get all identifiers of the spreadsheet that were not found in any of the checked processes
+     *
+     * @return
+     */
+
+    public List<String> getUnmatchedIdentifiers() {
+        List<String> unmatched = new ArrayList<>();
+        for (String identifier : index.getRows().keySet()) {
+            if (!matches.containsKey(identifier)) {
+                unmatched.add(identifier);
+            }
+        }
+        return unmatched;
+    }
+
+    public boolean isValid() {
+        return problems.isEmpty();
+    }
+}
@@ -0,0 +1,155 @@
+package de.intranda.goobi.plugins.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Serialises the enrichment of the same process, while different processes can be enriched in parallel. Process ids are mapped to a fixed
+ * number of lock stripes, so the memory usage does not grow with the number of processes.
+ *
+ * For installations with several Goobi nodes sharing the metadata folder, an additional file lock in the process folder can be used. The lock file
+ * {@value #LOCK_FILE_NAME} stays in the process folder: a node waiting for the lock holds the file open, after a removal the next node would lock
+ * a new file while the waiting node still gets the lock of the old one. Exports and archiving can skip the file, it has no content.
+ *
+ * The time spent waiting for locks is logged with level info every {@value #STATISTICS_INTERVAL} locks and for each wait longer than
+ * {@value #LONG_WAIT_MILLIS} ms.
+ */
+@Log4j2
+public class ProcessLockManager {
+
+    public static final String LOCK_FILE_NAME = ".excelMetadataenrichment.lock";
+
+    private static final int STRIPES = 64;
+
+    private static final int STATISTICS_INTERVAL = 100;
+
+    private static final long LONG_WAIT_MILLIS = 1000;
+
+    private static final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    private static final AtomicLong acquisitions = new AtomicLong();
+    private static final AtomicLong totalWaitNanos = new AtomicLong();
+    private static final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private ProcessLockManager() {
+    }
+
+    /**
+     * wait until the process can be enriched
+     *
+     * @param processId
+     * @param processFolder folder to create the lock file in or null, if no file lock is needed
+     * @return the lock, must be closed after the mets file was written
+     * @throws IOException
+     * @throws InterruptedException
+     */
+
+    public static ProcessLock lock(int processId, Path processFolder) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        ReentrantLock lock = locks[Math.floorMod(processId, STRIPES)];
+        lock.lockInterruptibly();
+        FileChannel channel = null;
+        FileLock fileLock = null;
+        try {
+            if (processFolder != null) {
+                channel = FileChannel.open(processFolder.resolve(LOCK_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                fileLock = channel.lock();
+            }
+        } catch (IOException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            lock.unlock();
+            throw e;
+        }
+
+        long wait = System.nanoTime() - start;
+        long count = acquisitions.incrementAndGet();
+        totalWaitNanos.addAndGet(wait);
+        maxWaitNanos.accumulateAndGet(wait, Math::max);
+        if (wait / 1000000 > LONG_WAIT_MILLIS) {
+            log.info("Waited {} ms for the lock of process {}, it was enriched by another step", wait / 1000000, processId);
+        } else {
+            log.debug("Waited {} ms for the lock of process {}", wait / 1000000, processId);
+        }
+        if (count % STATISTICS_INTERVAL == 0) {
+            log.info("Process locks: {} acquired, average wait {} ms, longest wait {} ms", count, getAverageWaitMillis(), getMaxWaitMillis());
+        }
+        return new ProcessLock(lock, channel, fileLock);
+    }
+
+    /**
+     * get the number of acquired locks since the start
+     *
+     * @return
+     */
+
+    public static long getAcquisitions() {
+        return acquisitions.get();
+    }
+
+    /**
+     * get the average time to wait for a lock
+     *
+     * @return
+     */
+
+    public static long getAverageWaitMillis() {
+        long count = acquisitions.get();
+        if (count == 0) {
+            return 0;
+        }
+        return totalWaitNanos.get() / count / 1000000;
+    }
+
+    /**
+     * get the longest time to wait for a lock
+     *
+     * @return
+     */
+
+    public static long getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1000000;
+    }
+
+    public static class ProcessLock implements Closeable {
+
+        private final ReentrantLock lock;
+        private final FileChannel channel;
+        private final FileLock fileLock;
+
+        private ProcessLock(ReentrantLock lock, FileChannel channel, FileLock fileLock) {
+            this.lock = lock;
+            this.channel = channel;
+            this.fileLock = fileLock;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (fileLock != null) {
+                    fileLock.release();
+                }
+                if (channel != null) {
+                    channel.close();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
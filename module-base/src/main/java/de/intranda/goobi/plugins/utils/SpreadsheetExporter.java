@@ -0,0 +1,280 @@
+package de.intranda.goobi.plugins.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataGroup;
+import ugh.dl.MetadataGroupType;
+import ugh.dl.MetadataType;
+import ugh.dl.Person;
+import ugh.dl.Prefs;
+
+/**
+ * Writes the metadata of structure elements into a spreadsheet, using the same mappings as the enrichment. The created file can be edited and
+ * imported again.
+ *
+ * The rows are written with a streaming workbook, only the last rows are kept in memory. The file is written into a temporary file and renamed
+ * when the export is finished. If the exporter is closed without finishing the export, the destination is left unchanged.
+ */
+@Log4j2
+public class SpreadsheetExporter implements Closeable {
+
+    private final ExcelConfig ec;
+    private final Path destination;
+    private final Path tempFile;
+    private final SXSSFWorkbook wb;
+    private final SXSSFSheet sheet;
+
+    /** column number for each header name */
+    private final Map<String, Integer> headerOrder = new LinkedHashMap<>();
+
+    private int nextRow;
+
+    @Getter
+    private int rowCount;
+
+    /** rows that don't fit between rowDataStart and rowDataEnd */
+    @Getter
+    private int skippedRows;
+
+    private boolean finished;
+
+    /**
+     * create a new spreadsheet and write the header row
+     *
+     * @param ec
+     * @param destination
+     */
+
+    public SpreadsheetExporter(ExcelConfig ec, Path destination) {
+        this.ec = ec;
+        this.destination = destination;
+        tempFile = FileHelper.getTemporaryFile(destination);
+        wb = new SXSSFWorkbook(ec.getExportRowWindow());
+        wb.setCompressTempFiles(true);
+        sheet = wb.createSheet();
+
+        addHeader(ec.getExcelIdentifierColumn());
+        for (MetadataMappingObject mmo : ec.getMetadataList()) {
+            addMetadataHeader(mmo);
+        }
+        for (PersonMappingObject pmo : ec.getPersonList()) {
+            addPersonHeader(pmo);
+        }
+        for (GroupMappingObject gmo : ec.getGroupList()) {
+            for (MetadataMappingObject mmo : gmo.getMetadataList()) {
+                addMetadataHeader(mmo);
+            }
+            for (PersonMappingObject pmo : gmo.getPersonList()) {
+                addPersonHeader(pmo);
+            }
+        }
+
+        Row headerRow = sheet.createRow(ec.getRowHeader() - 1);
+        for (Map.Entry<String, Integer> entry : headerOrder.entrySet()) {
+            headerRow.createCell(entry.getValue()).setCellValue(entry.getKey());
+        }
+        nextRow = Math.max(ec.getRowHeader(), ec.getRowDataStart() - 1);
+    }
+
+    private void addMetadataHeader(MetadataMappingObject mmo) {
+        addHeader(mmo.getHeaderName());
+        addHeader(mmo.getNormdataHeaderName());
+    }
+
+    private void addPersonHeader(PersonMappingObject pmo) {
+        if (pmo.isSplitName()) {
+            addHeader(pmo.getHeaderName());
+        } else {
+            addHeader(pmo.getFirstnameHeaderName());
+            addHeader(pmo.getLastnameHeaderName());
+        }
+        addHeader(pmo.getNormdataHeaderName());
+    }
+
+    private void addHeader(String headerName) {
+        if (StringUtils.isNotBlank(headerName) && !headerOrder.containsKey(headerName)) {
+            headerOrder.put(headerName, headerOrder.size());
+        }
+    }
+
+    /**
+     * write a row for each structure element of the logical tree that contains an identifier
+     *
+     * @param logical the top element of the logical tree
+     * @param prefs
+     */
+
+    public void addDocStructs(DocStruct logical, Prefs prefs) {
+        MetadataType identifierType = prefs.getMetadataTypeByName(ec.getDocstructIdentifier());
+        if (identifierType == null) {
+            log.error("Metadata type {} is not defined in the ruleset", ec.getDocstructIdentifier());
+            return;
+        }
+        Deque<DocStruct> stack = new ArrayDeque<>();
+        stack.push(logical);
+        while (!stack.isEmpty()) {
+            DocStruct ds = stack.pop();
+            List<? extends Metadata> md = ds.getAllMetadataByType(identifierType);
+            if (md != null && !md.isEmpty() && StringUtils.isNotBlank(md.get(0).getValue())) {
+                addRow(ds, md.get(0).getValue(), prefs);
+            }
+            List<DocStruct> children = ds.getAllChildren();
+            if (children != null) {
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    stack.push(children.get(i));
+                }
+            }
+        }
+    }
+
+    private void addRow(DocStruct ds, String identifier, Prefs prefs) {
+        if (rowCount == ec.getRowDataEnd() - ec.getRowDataStart() + 1) {
+            // the import would ignore these rows, only count them to report the needed rowDataEnd
+            skippedRows++;
+            return;
+        }
+        Row row = sheet.createRow(nextRow++);
+        rowCount++;
+        setCell(row, ec.getExcelIdentifierColumn(), identifier);
+
+        // mappings with the same ruleset name are filled with the next occurrence of the metadata
+        MappingOccurrences occurrences = new MappingOccurrences();
+        for (MetadataMappingObject mmo : ec.getMetadataList()) {
+            DocStruct target = DocStructIndex.getTarget(ds, mmo.getDocType());
+            MetadataType type = prefs.getMetadataTypeByName(mmo.getRulesetName());
+            if (target == null || type == null) {
+                continue;
+            }
+            List<? extends Metadata> mdl = target.getAllMetadataByType(type);
+            Metadata md = MappingOccurrences.get(mdl, occurrences.next("metadata", mmo.getDocType(), mmo.getRulesetName()));
+            if (md != null) {
+                setMetadataCells(row, mmo, md);
+            }
+        }
+        for (PersonMappingObject pmo : ec.getPersonList()) {
+            DocStruct target = DocStructIndex.getTarget(ds, pmo.getDocType());
+            MetadataType type = prefs.getMetadataTypeByName(pmo.getRulesetName());
+            if (target == null || type == null) {
+                continue;
+            }
+            List<Person> persons = target.getAllPersonsByType(type);
+            Person p = MappingOccurrences.get(persons, occurrences.next("person", pmo.getDocType(), pmo.getRulesetName()));
+            if (p != null) {
+                setPersonCells(row, pmo, p);
+            }
+        }
+        for (GroupMappingObject gmo : ec.getGroupList()) {
+            DocStruct target = DocStructIndex.getTarget(ds, gmo.getDocType());
+            MetadataGroupType type = prefs.getMetadataGroupTypeByName(gmo.getRulesetName());
+            if (target == null || type == null) {
+                continue;
+            }
+            List<MetadataGroup> groups = target.getAllMetadataGroupsByType(type);
+            MetadataGroup group = MappingOccurrences.get(groups, occurrences.next("group", gmo.getDocType(), gmo.getRulesetName()));
+            if (group == null) {
+                continue;
+            }
+            for (MetadataMappingObject mmo : gmo.getMetadataList()) {
+                List<Metadata> mdl = group.getMetadataByType(mmo.getRulesetName());
+                if (mdl != null && !mdl.isEmpty()) {
+                    setMetadataCells(row, mmo, mdl.get(0));
+                }
+            }
+            for (PersonMappingObject pmo : gmo.getPersonList()) {
+                List<Person> persons = group.getPersonByType(pmo.getRulesetName());
+                if (persons != null && !persons.isEmpty()) {
+                    setPersonCells(row, pmo, persons.get(0));
+                }
+            }
+        }
+    }
+
+    private void setMetadataCells(Row row, MetadataMappingObject mmo, Metadata md) {
+        setCell(row, mmo.getHeaderName(), md.getValue());
+        setCell(row, mmo.getNormdataHeaderName(), md.getAuthorityValue());
+    }
+
+    private void setPersonCells(Row row, PersonMappingObject pmo, Person p) {
+        String firstname = StringUtils.defaultString(p.getFirstname());
+        String lastname = StringUtils.defaultString(p.getLastname());
+        if (pmo.isSplitName()) {
+            String name;
+            if (StringUtils.isBlank(firstname)) {
+                name = lastname;
+            } else if (pmo.isFirstNameIsFirst()) {
+                name = firstname + pmo.getSplitChar() + lastname;
+            } else {
+                name = lastname + pmo.getSplitChar() + firstname;
+            }
+            setCell(row, pmo.getHeaderName(), name);
+        } else {
+            setCell(row, pmo.getFirstnameHeaderName(), firstname);
+            setCell(row, pmo.getLastnameHeaderName(), lastname);
+        }
+        setCell(row, pmo.getNormdataHeaderName(), p.getAuthorityValue());
+    }
+
+    private void setCell(Row row, String headerName, String value) {
+        if (headerName == null || StringUtils.isBlank(value)) {
+            return;
+        }
+        Integer column = headerOrder.get(headerName);
+        if (column != null && row.getCell(column) == null) {
+            row.createCell(column).setCellValue(value);
+        }
+    }
+
+    /**
+     * write the spreadsheet into a temporary file and move it to the destination afterwards
+     *
+     * @throws IOException if the file cannot be written or if there are more rows than the import reads
+     */
+
+    public void finish() throws IOException {
+        if (skippedRows > 0) {
+            throw new IOException("Export contains " + (rowCount + skippedRows) + " rows, but rowDataEnd " + ec.getRowDataEnd()
+                    + " allows only " + rowCount + ", increase rowDataEnd to at least " + (ec.getRowDataStart() + rowCount + skippedRows - 1));
+        }
+        try (OutputStream out = Files.newOutputStream(tempFile)) {
+            wb.write(out);
+        }
+        FileHelper.moveAtomically(tempFile, destination);
+        finished = true;
+        log.debug("Exported {} rows into {}", rowCount, destination);
+    }
+
+    /**
+     * remove the temporary files, an unfinished export is discarded
+     */
+
+    @Override
+    public void close() throws IOException {
+        try {
+            // remove the temporary files of the streaming workbook
+            wb.dispose();
+            wb.close();
+        } finally {
+            if (!finished) {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+}
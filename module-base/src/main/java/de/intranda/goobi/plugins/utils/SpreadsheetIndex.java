@@ -0,0 +1,272 @@
+package de.intranda.goobi.plugins.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.input.BOMInputStream;
+import org.apache.commons.lang.StringUtils;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellValue;
+import org.apache.poi.ss.usermodel.FormulaEvaluator;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Row.MissingCellPolicy;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Content of a spreadsheet, indexed by the values of the configured identifier column. The index is read once and can be used for any number of
+ * processes afterwards.
+ */
+@Log4j2
+public class SpreadsheetIndex {
+
+    @Getter
+    private final Path excelFile;
+
+    /** modification date of the file at the time it was read */
+    @Getter
+    private final long lastModified;
+
+    /** column number for each header name */
+    @Getter
+    private final Map<String, Integer> headerOrder = new HashMap<>();
+
+    /** row content for each identifier, in the order of the spreadsheet */
+    @Getter
+    private final Map<String, Map<Integer, String>> rows = new LinkedHashMap<>();
+
+    /** identifiers used in more than one row, the last row wins */
+    @Getter
+    private final List<String> duplicateIdentifiers = new ArrayList<>();
+
+    /** number of data rows without identifier */
+    @Getter
+    private int rowsWithoutIdentifier;
+
+    /** number of cell values that were replaced by an already known instance */
+    @Getter
+    private long deduplicatedValues;
+
+    /** share of the cell values that were replaced by an already known instance */
+    @Getter
+    private double deduplicationRate;
+
+    private SpreadsheetIndex(Path excelFile, long lastModified) {
+        this.excelFile = excelFile;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * read the first sheet of the file and index all data rows by the configured identifier column.
+     *
+     * The reading stops when the thread gets interrupted, either while the file is loaded or between two rows.
+     *
+     * @param excelFile
+     * @param ec
+     * @return
+     * @throws IOException
+     * @throws InterruptedIOException if the thread was interrupted, nothing is returned or cached in this case
+     */
+
+    public static SpreadsheetIndex read(Path excelFile, ExcelConfig ec) throws IOException {
+        SpreadsheetIndex index = new SpreadsheetIndex(excelFile, Files.getLastModifiedTime(excelFile).toMillis());
+
+        try (InputStream fileInputStream = Files.newInputStream(excelFile);
+                BOMInputStream in = new BOMInputStream(fileInputStream, false);
+                Workbook wb = WorkbookFactory.create(in)) {
+            Sheet sheet = wb.getSheetAt(0);
+            Iterator<Row> rowIterator = sheet.rowIterator();
+            FormulaEvaluator evaluator = wb.getCreationHelper().createFormulaEvaluator();
+            // get header and data row number from config first
+            int rowHeader = ec.getRowHeader();
+            int rowDataStart = ec.getRowDataStart();
+            int rowDataEnd = ec.getRowDataEnd();
+            int rowCounter = 0;
+
+            //  find the header row
+            Row headerRow = null;
+            while (rowCounter < rowHeader && rowIterator.hasNext()) {
+                headerRow = rowIterator.next();
+                rowCounter++;
+            }
+            if (headerRow == null) {
+                throw new IOException("Header row " + rowHeader + " not found in " + excelFile);
+            }
+
+            //  read and validate the header row
+            int numberOfCells = headerRow.getLastCellNum();
+            for (int i = 0; i < numberOfCells; i++) {
+                Cell cell = headerRow.getCell(i);
+                if (cell != null) {
+                    String value = cell.getStringCellValue();
+                    index.headerOrder.put(value, i);
+                }
+            }
+
+            // find out the first data row
+            while (rowCounter < rowDataStart - 1 && rowIterator.hasNext()) {
+                rowIterator.next();
+                rowCounter++;
+            }
+
+            Integer identifierColumn = index.headerOrder.get(ec.getExcelIdentifierColumn());
+            // rows are kept in memory as long as the index is cached, share the instances of repeated values
+            ValueInterner interner = new ValueInterner(ec.getInternCapacity());
+            while (rowIterator.hasNext() && rowCounter < rowDataEnd) {
+                if (Thread.currentThread().isInterrupted()) {
+                    // the enrichment was cancelled, don't waste time on the remaining rows
+                    throw new InterruptedIOException("Reading " + excelFile + " was interrupted");
+                }
+                Map<Integer, String> rowMap = new HashMap<>();
+                Row row = rowIterator.next();
+                rowCounter++;
+                int lastColumn = row.getLastCellNum();
+                if (lastColumn == -1) {
+                    continue;
+                }
+                for (int cn = 0; cn < lastColumn; cn++) {
+                    Cell cell = row.getCell(cn, MissingCellPolicy.CREATE_NULL_AS_BLANK);
+                    rowMap.put(cn, interner.intern(getCellValue(cell, evaluator)));
+                }
+
+                String identifier = rowMap.get(identifierColumn);
+                if (StringUtils.isBlank(identifier)) {
+                    // rows without identifier can't be matched, don't keep them in memory
+                    index.rowsWithoutIdentifier++;
+                    continue;
+                }
+                if (index.rows.put(identifier, rowMap) != null) {
+                    index.duplicateIdentifiers.add(identifier);
+                }
+            }
+            index.deduplicatedValues = interner.getHits();
+            index.deduplicationRate = interner.getHitRate();
+            log.debug("Read {} rows from {}, {} distinct values stored, {} values deduplicated ({}%)", index.rows.size(), excelFile,
+                    interner.getSize(), interner.getHits(), Math.round(interner.getHitRate() * 100));
+        } catch (ClosedByInterruptException e) {
+            throw new InterruptedIOException("Reading " + excelFile + " was interrupted");
+        }
+        return index;
+    }
+
+    private static String getCellValue(Cell cell, FormulaEvaluator evaluator) {
+        String value = "";
+        switch (cell.getCellType()) {
+            case BOOLEAN:
+                value = cell.getBooleanCellValue() ? "true" : "false";
+                break;
+            case FORMULA:
+                CellValue cellValue = evaluator.evaluate(cell);
+                switch (cellValue.getCellType()) {
+                    case NUMERIC:
+                        value = String.valueOf((long) cell.getNumericCellValue());
+                        break;
+                    case STRING:
+                        value = cell.getStringCellValue();
+                        break;
+                    default:
+                        value = "";
+                        break;
+                }
+                break;
+            case NUMERIC:
+                double val = cell.getNumericCellValue();
+                String stringValue = String.valueOf(val);
+                if (stringValue.endsWith(".0")) {
+                    value = String.valueOf((long) cell.getNumericCellValue());
+                } else {
+                    value = stringValue;
+                }
+                break;
+            case STRING:
+                value = cell.getStringCellValue();
+                break;
+            default:
+                value = "";
+                break;
+        }
+        return value;
+    }
+
+    /**
+     * get the row for an identifier
+     *
+     * @param identifier
+     * @return the row or null, if the identifier is not used in the spreadsheet
+     */
+
+    public Map<Integer, String> getRow(String identifier) {
+        return rows.get(identifier);
+    }
+
+    /**
+     * check that all columns used in the configuration exist in the header row
+     *
+     * @param ec
+     * @return list of problems, empty if the spreadsheet matches the configuration
+     */
+
+    public List<String> validate(ExcelConfig ec) {
+        List<String> problems = new ArrayList<>();
+        checkHeader(problems, ec.getExcelIdentifierColumn(), "excelIdentifierColumn");
+        for (MetadataMappingObject mmo : ec.getMetadataList()) {
+            checkMetadataMapping(problems, mmo);
+        }
+        for (PersonMappingObject pmo : ec.getPersonList()) {
+            checkPersonMapping(problems, pmo);
+        }
+        for (GroupMappingObject gmo : ec.getGroupList()) {
+            for (MetadataMappingObject mmo : gmo.getMetadataList()) {
+                checkMetadataMapping(problems, mmo);
+            }
+            for (PersonMappingObject pmo : gmo.getPersonList()) {
+                checkPersonMapping(problems, pmo);
+            }
+        }
+        for (String identifier : duplicateIdentifiers) {
+            problems.add("Identifier " + identifier + " is used in more than one row, only the last row is imported");
+        }
+        return problems;
+    }
+
+    private void checkMetadataMapping(List<String> problems, MetadataMappingObject mmo) {
+        checkHeader(problems, mmo.getHeaderName(), mmo.getRulesetName());
+        if (mmo.getNormdataHeaderName() != null) {
+            checkHeader(problems, mmo.getNormdataHeaderName(), mmo.getRulesetName());
+        }
+    }
+
+    private void checkPersonMapping(List<String> problems, PersonMappingObject pmo) {
+        if (pmo.isSplitName()) {
+            checkHeader(problems, pmo.getHeaderName(), pmo.getRulesetName());
+        } else {
+            checkHeader(problems, pmo.getFirstnameHeaderName(), pmo.getRulesetName());
+            checkHeader(problems, pmo.getLastnameHeaderName(), pmo.getRulesetName());
+        }
+        if (pmo.getNormdataHeaderName() != null) {
+            checkHeader(problems, pmo.getNormdataHeaderName(), pmo.getRulesetName());
+        }
+    }
+
+    private void checkHeader(List<String> problems, String headerName, String usedFor) {
+        if (StringUtils.isBlank(headerName)) {
+            problems.add("No column configured for " + usedFor);
+        } else if (!headerOrder.containsKey(headerName)) {
+            problems.add("Column " + headerName + " configured for " + usedFor + " does not exist");
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package de.intranda.goobi.plugins.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Keeps the last read spreadsheets in memory, so that all processes enriched from the same file share a single parse. An entry is only used as
+ * long as the file was not modified and it was read with the same row and identifier settings.
+ *
+ * An entry is added as soon as the file is read. Callers asking for the same file in the meantime wait for this read instead of reading the file
+ * again.
+ */
+@Log4j2
+public class SpreadsheetIndexCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 20;
+
+    private static volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    private static final Map<Path, CacheEntry> cache = new LinkedHashMap<Path, CacheEntry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, CacheEntry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    private SpreadsheetIndexCache() {
+    }
+
+    /**
+     * set the number of spreadsheets kept in memory, the oldest entries are removed if there are more
+     *
+     * @param entries
+     */
+
+    public static void setMaxEntries(int entries) {
+        synchronized (cache) {
+            maxEntries = Math.max(1, entries);
+            Iterator<Path> iterator = cache.keySet().iterator();
+            while (cache.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * get the number of spreadsheets kept in memory
+     *
+     * @return
+     */
+
+    public static int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * get the index of the file, the file is only read if no current index exists and no other thread reads it already
+     *
+     * @param excelFile
+     * @param ec
+     * @return
+     * @throws IOException
+     */
+
+    public static SpreadsheetIndex getIndex(Path excelFile, ExcelConfig ec) throws IOException {
+        Path key = excelFile.toAbsolutePath().normalize();
+        String settings = getSettings(ec);
+        while (true) {
+            long lastModified = Files.getLastModifiedTime(key).toMillis();
+            CacheEntry entry;
+            FutureTask<SpreadsheetIndex> task = null;
+            synchronized (cache) {
+                entry = cache.get(key);
+                if (entry == null || !entry.isCurrent(lastModified, settings)) {
+                    task = new FutureTask<>(() -> SpreadsheetIndex.read(key, ec));
+                    entry = new CacheEntry(task, lastModified, settings);
+                    cache.put(key, entry);
+                }
+            }
+            if (task != null) {
+                task.run();
+            } else {
+                log.debug("Use cached index for {}", key);
+            }
+
+            try {
+                return entry.index.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Waiting for " + key + " was interrupted");
+            } catch (ExecutionException e) {
+                // failed reads are not cached
+                synchronized (cache) {
+                    cache.remove(key, entry);
+                }
+                Throwable cause = e.getCause();
+                if (cause instanceof InterruptedIOException && task == null && !Thread.currentThread().isInterrupted()) {
+                    // the thread reading the file was cancelled, but this caller still needs the index
+                    continue;
+                }
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    /**
+     * check if a current index of the file exists or is read at the moment
+     *
+     * @param excelFile
+     * @param ec
+     * @return
+     * @throws IOException
+     */
+
+    public static boolean contains(Path excelFile, ExcelConfig ec) throws IOException {
+        Path key = excelFile.toAbsolutePath().normalize();
+        long lastModified = Files.getLastModifiedTime(key).toMillis();
+        synchronized (cache) {
+            CacheEntry entry = cache.get(key);
+            return entry != null && entry.isCurrent(lastModified, getSettings(ec));
+        }
+    }
+
+    /**
+     * remove the index of the file
+     *
+     * @param excelFile
+     */
+
+    public static void invalidate(Path excelFile) {
+        synchronized (cache) {
+            cache.remove(excelFile.toAbsolutePath().normalize());
+        }
+    }
+
+    private static String getSettings(ExcelConfig ec) {
+        return ec.getRowHeader() + "|" + ec.getRowDataStart() + "|" + ec.getRowDataEnd() + "|" + Objects.toString(ec.getExcelIdentifierColumn());
+    }
+
+    private static class CacheEntry {
+        private final Future<SpreadsheetIndex> index;
+        private final long lastModified;
+        private final String settings;
+
+        private CacheEntry(Future<SpreadsheetIndex> index, long lastModified, String settings) {
+            this.index = index;
+            this.lastModified = lastModified;
+            this.settings = settings;
+        }
+
+        private boolean isCurrent(long modified, String otherSettings) {
+            return lastModified == modified && settings.equals(otherSettings);
+        }
+    }
+}
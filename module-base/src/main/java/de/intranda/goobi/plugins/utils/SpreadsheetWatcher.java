@@ -0,0 +1,245 @@
+package de.intranda.goobi.plugins.utils;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Watches a folder for new or changed spreadsheets and reads them in the background into the {@link SpreadsheetIndexCache}. When the
+ * enrichment step is executed later, the spreadsheet is already indexed and the step only needs to do the lookups and write the mets file.
+ *
+ * Changes are detected with a {@link WatchService}. Network file systems often don't report changes, in this case the folder can be polled
+ * instead. Of the files that exist already when the watcher starts, only the newest ones that fit into the {@link SpreadsheetIndexCache} are
+ * read, reading more files would only evict the indices of running steps.
+ *
+ * The threads of a watcher run until {@link #stop(Path)} or {@link #stopAll()} is called.
+ */
+@Log4j2
+public class SpreadsheetWatcher {
+
+    /** wait until a changed file was not modified any further before it is read */
+    private static final long SETTLE_SECONDS = 2;
+
+    private static final int THREADS = 2;
+
+    private static final Map<Path, SpreadsheetWatcher> watchers = new HashMap<>();
+
+    private final Path folder;
+    private final ExcelConfig ec;
+    private final DirectoryStream.Filter<Path> filter;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    private WatchService watchService;
+
+    /** files waiting to be read, a file is only scheduled once */
+    private final Set<Path> pending = ConcurrentHashMap.newKeySet();
+
+    /** modification dates of the last poll */
+    private final Map<Path, Long> knownFiles = new HashMap<>();
+
+    /**
+     * start watching the folder, if it is not watched already
+     *
+     * @param folder
+     * @param ec the configuration used to read the spreadsheets
+     * @param filter selects the spreadsheets in the folder
+     */
+
+    public static synchronized void start(Path folder, ExcelConfig ec, DirectoryStream.Filter<Path> filter) {
+        Path key = folder.toAbsolutePath().normalize();
+        if (watchers.containsKey(key) || !Files.isDirectory(key)) {
+            return;
+        }
+        SpreadsheetWatcher watcher = new SpreadsheetWatcher(key, ec, filter);
+        watchers.put(key, watcher);
+        if (!ec.isPrewarmPolling()) {
+            try {
+                watcher.startWatchService();
+                // register first, so that no file created in the meantime is missed
+                watcher.poll(false);
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                log.warn("Cannot watch {}, poll it instead", key, e);
+            }
+        }
+        watcher.startPolling();
+    }
+
+    /**
+     * stop watching the folder
+     *
+     * @param folder
+     */
+
+    public static synchronized void stop(Path folder) {
+        SpreadsheetWatcher watcher = watchers.remove(folder.toAbsolutePath().normalize());
+        if (watcher != null) {
+            watcher.shutdown();
+        }
+    }
+
+    /**
+     * stop all watchers, e.g. when the plugin is unloaded
+     */
+
+    public static synchronized void stopAll() {
+        for (SpreadsheetWatcher watcher : watchers.values()) {
+            watcher.shutdown();
+        }
+        watchers.clear();
+    }
+
+    private void shutdown() {
+        executor.shutdownNow();
+        if (watchService != null) {
+            try {
+                // ends the watch thread
+                watchService.close();
+            } catch (IOException e) {
+                log.warn("Cannot stop watching {}", folder, e);
+            }
+        }
+        log.info("Stopped watching {}", folder);
+    }
+
+    private SpreadsheetWatcher(Path folder, ExcelConfig ec, DirectoryStream.Filter<Path> filter) {
+        this.folder = folder;
+        this.ec = ec;
+        this.filter = filter;
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(THREADS, r -> {
+            Thread thread = new Thread(r, "excel-enrichment-prewarm-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    private void startWatchService() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread thread = new Thread(() -> watch(watchService), "excel-enrichment-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Watching {} for new spreadsheets", folder);
+    }
+
+    private void watch(WatchService watchService) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        continue;
+                    }
+                    schedule(folder.resolve((Path) event.context()));
+                }
+                if (!key.reset()) {
+                    log.warn("{} is not accessible anymore, stop watching it", folder);
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        }
+        synchronized (SpreadsheetWatcher.class) {
+            watchers.remove(folder, this);
+        }
+        executor.shutdown();
+    }
+
+    private void startPolling() {
+        poll(false);
+        executor.scheduleWithFixedDelay(() -> poll(true), ec.getPrewarmInterval(), ec.getPrewarmInterval(), TimeUnit.SECONDS);
+        log.info("Polling {} every {} seconds for new spreadsheets", folder, ec.getPrewarmInterval());
+    }
+
+    /**
+     * list the folder and read new or changed files
+     *
+     * @param scheduleChanges false during the start, only the newest files that are not cached yet are read
+     */
+
+    private void poll(boolean scheduleChanges) {
+        List<Path> uncachedFiles = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, filter)) {
+            for (Path file : stream) {
+                long lastModified = Files.getLastModifiedTime(file).toMillis();
+                Long known = knownFiles.put(file, lastModified);
+                if (scheduleChanges) {
+                    if (known == null || known != lastModified) {
+                        schedule(file);
+                    }
+                } else if (!SpreadsheetIndexCache.contains(file, ec)) {
+                    uncachedFiles.add(file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Cannot list {}", folder, e);
+        }
+
+        // a folder with one file per process can contain thousands of files, read only as many as the cache keeps
+        uncachedFiles.sort(Comparator.comparing((Path file) -> knownFiles.get(file)).reversed());
+        int limit = Math.min(uncachedFiles.size(), SpreadsheetIndexCache.getMaxEntries());
+        for (Path file : uncachedFiles.subList(0, limit)) {
+            schedule(file);
+        }
+    }
+
+    private void schedule(Path file) {
+        try {
+            if (!filter.accept(file) || !pending.add(file)) {
+                return;
+            }
+        } catch (IOException e) {
+            return;
+        }
+        executor.schedule(() -> read(file), SETTLE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void read(Path file) {
+        pending.remove(file);
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try {
+            long lastModified = Files.getLastModifiedTime(file).toMillis();
+            if (System.currentTimeMillis() - lastModified < TimeUnit.SECONDS.toMillis(SETTLE_SECONDS)) {
+                // still written, try again later
+                schedule(file);
+                return;
+            }
+            SpreadsheetIndex index = SpreadsheetIndexCache.getIndex(file, ec);
+            log.debug("Prepared index for {} with {} rows", file, index.getRows().size());
+            // report configuration problems before the first step uses the file
+            for (String problem : index.validate(ec)) {
+                log.warn("Problem in {}: {}", file, problem);
+            }
+        } catch (Exception e) {
+            // the file is read again by the enrichment step, the error is reported there
+            log.debug("Cannot read {} in advance", file, e);
+        }
+    }
+}
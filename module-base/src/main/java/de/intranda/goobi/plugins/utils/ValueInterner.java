@@ -0,0 +1,86 @@
+package de.intranda.goobi.plugins.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.Getter;
+
+/**
+ * Deduplicates repeated cell values like language codes, collection names or 'true'/'false', so that all rows of a spreadsheet share one
+ * instance per value.
+ *
+ * The number of stored values is bounded by the capacity. When it is reached, new values are returned unchanged, already known values are still
+ * deduplicated. Long values are usually unique (titles, descriptions) and are never stored.
+ *
+ * An instance is meant to be used by a single thread while a spreadsheet is read.
+ */
+public class ValueInterner {
+
+    public static final int MAX_VALUE_LENGTH = 128;
+
+    private final Map<String, String> values = new HashMap<>();
+
+    @Getter
+    private final int capacity;
+
+    @Getter
+    private long hits;
+
+    @Getter
+    private long misses;
+
+    /**
+     * @param capacity maximal number of stored values, 0 disables the deduplication
+     */
+
+    public ValueInterner(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * get the shared instance of the value
+     *
+     * @param value
+     * @return the known instance or the value itself
+     */
+
+    public String intern(String value) {
+        if (value == null || capacity <= 0 || value.length() > MAX_VALUE_LENGTH) {
+            return value;
+        }
+        String known = values.get(value);
+        if (known != null) {
+            hits++;
+            return known;
+        }
+        misses++;
+        if (values.size() < capacity) {
+            values.put(value, value);
+        }
+        return value;
+    }
+
+    /**
+     * get the number of stored values
+     *
+     * @return
+     */
+
+    public int getSize() {
+        return values.size();
+    }
+
+    /**
+     * get the share of the values that were found
+     *
+     * @return value between 0 and 1
+     */
+
+    public double getHitRate() {
+        long total = hits + misses;
+        if (total == 0) {
+            return 0;
+        }
+        return (double) hits / total;
+    }
+}
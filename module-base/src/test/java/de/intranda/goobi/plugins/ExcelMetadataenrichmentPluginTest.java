@@ -2,9 +2,13 @@ package de.intranda.goobi.plugins;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -12,6 +16,13 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import org.apache.commons.lang.StringUtils;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Row.MissingCellPolicy;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.easymock.EasyMock;
 import org.goobi.beans.Process;
 import org.goobi.beans.Project;
@@ -30,14 +41,20 @@ import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import de.intranda.goobi.plugins.utils.SpreadsheetExporter;
+import de.intranda.goobi.plugins.utils.SpreadsheetIndexCache;
 import de.sub.goobi.config.ConfigurationHelper;
 import de.sub.goobi.helper.VariableReplacer;
 import de.sub.goobi.helper.enums.StepStatus;
 import de.sub.goobi.metadaten.MetadatenHelper;
 import de.sub.goobi.persistence.managers.MetadataManager;
 import de.sub.goobi.persistence.managers.ProcessManager;
+import ugh.dl.DigitalDocument;
 import ugh.dl.DocStruct;
 import ugh.dl.Fileformat;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataGroup;
+import ugh.dl.Person;
 import ugh.dl.Prefs;
 import ugh.fileformats.mets.MetsMods;
 
@@ -122,6 +139,238 @@ public class ExcelMetadataenrichmentPluginTest {
         assertEquals("Doe", ds4.getAllPersons().get(0).getLastname());
     }
 
+    @Test
+    public void reportUnreadableSpreadsheet() throws Exception {
+        String before = describe(process.readMetadataFile().getDigitalDocument().getLogicalDocStruct());
+        Path broken = folder.newFile("broken.xlsx").toPath();
+        Files.write(broken, "no spreadsheet".getBytes(StandardCharsets.UTF_8));
+
+        ExcelMetadataenrichmentStepPlugin plugin = new ExcelMetadataenrichmentStepPlugin();
+        plugin.initialize(s1, "");
+        plugin.setExcelFile(broken.toString());
+
+        // the error of the background read is reported by the step, the mets file is not written
+        assertEquals(PluginReturnValue.ERROR, plugin.run());
+        assertEquals(before, describe(process.readMetadataFile().getDigitalDocument().getLogicalDocStruct()));
+    }
+
+    @Test
+    public void stopWhenInterrupted() throws Exception {
+        ExcelMetadataenrichmentStepPlugin plugin = new ExcelMetadataenrichmentStepPlugin();
+        plugin.initialize(s1, "");
+        plugin.setExcelFile(resourcesFolder + "/sample.xlsx");
+
+        // waiting for the lock is interrupted, the background read gets cancelled and the interrupt is kept
+        Thread.currentThread().interrupt();
+        PluginReturnValue result = plugin.run();
+        assertTrue(Thread.interrupted());
+        assertEquals(PluginReturnValue.ERROR, result);
+    }
+
+    @Test
+    public void exportAndImportAgain() throws Exception {
+        s1.setTitel("roundtrip step");
+        String before = describe(process.readMetadataFile().getDigitalDocument().getLogicalDocStruct());
+
+        Path spreadsheet = folder.getRoot().toPath().resolve("00469418X.xlsx");
+        try (SpreadsheetExporter exporter = new SpreadsheetExporter(TestResources.getConfig("roundtrip step"), spreadsheet)) {
+            exporter.addDocStructs(process.readMetadataFile().getDigitalDocument().getLogicalDocStruct(), prefs);
+            exporter.finish();
+        }
+
+        importSpreadsheet(spreadsheet);
+        // existing fields are overwritten with the same values, nothing is added
+        assertEquals(before, describe(process.readMetadataFile().getDigitalDocument().getLogicalDocStruct()));
+
+        // normdata added in the spreadsheet is written into the existing fields
+        setCell(spreadsheet, "00469418X", "Author GND", "118540238");
+        setCell(spreadsheet, "3333", "Title GND", "4011882-4");
+        importSpreadsheet(spreadsheet);
+        DocStruct logical = process.readMetadataFile().getDigitalDocument().getLogicalDocStruct();
+        assertEquals(1, logical.getAllPersons().size());
+        assertEquals("118540238", logical.getAllPersons().get(0).getAuthorityValue());
+        DocStruct chapter = logical.getAllChildren().get(2);
+        assertEquals("4011882-4", chapter.getAllMetadataByType(prefs.getMetadataTypeByName("TitleDocMain")).get(0).getAuthorityValue());
+
+        // removed normdata is removed from the fields
+        setCell(spreadsheet, "00469418X", "Author GND", null);
+        importSpreadsheet(spreadsheet);
+        logical = process.readMetadataFile().getDigitalDocument().getLogicalDocStruct();
+        assertTrue(StringUtils.isBlank(logical.getAllPersons().get(0).getAuthorityValue()));
+        chapter = logical.getAllChildren().get(2);
+        assertEquals("4011882-4", chapter.getAllMetadataByType(prefs.getMetadataTypeByName("TitleDocMain")).get(0).getAuthorityValue());
+    }
+
+    private void importSpreadsheet(Path spreadsheet) {
+        // the file may be changed within the resolution of the modification date
+        SpreadsheetIndexCache.invalidate(spreadsheet);
+        ExcelMetadataenrichmentStepPlugin plugin = new ExcelMetadataenrichmentStepPlugin();
+        plugin.initialize(s1, "");
+        plugin.setExcelFile(spreadsheet.toString());
+        assertEquals(PluginReturnValue.FINISH, plugin.run());
+    }
+
+    /**
+     * edit a cell like a curator, null removes the cell
+     */
+
+    private static void setCell(Path spreadsheet, String identifier, String headerName, String value) throws Exception {
+        Workbook wb;
+        try (InputStream in = Files.newInputStream(spreadsheet)) {
+            wb = WorkbookFactory.create(in);
+        }
+        try {
+            Sheet sheet = wb.getSheetAt(0);
+            int column = -1;
+            for (Cell cell : sheet.getRow(0)) {
+                if (headerName.equals(cell.getStringCellValue())) {
+                    column = cell.getColumnIndex();
+                }
+            }
+            for (Row row : sheet) {
+                Cell identifierCell = row.getCell(0);
+                if (identifierCell != null && identifier.equals(identifierCell.getStringCellValue())) {
+                    Cell cell = row.getCell(column, MissingCellPolicy.CREATE_NULL_AS_BLANK);
+                    if (value == null) {
+                        row.removeCell(cell);
+                    } else {
+                        cell.setCellValue(value);
+                    }
+                }
+            }
+            try (OutputStream out = Files.newOutputStream(spreadsheet)) {
+                wb.write(out);
+            }
+        } finally {
+            wb.close();
+        }
+    }
+
+    private static String describe(DocStruct ds) {
+        StringBuilder sb = new StringBuilder(ds.getType().getName()).append('\n');
+        if (ds.getAllMetadata() != null) {
+            for (Metadata md : ds.getAllMetadata()) {
+                sb.append(md.getType().getName()).append('=').append(md.getValue()).append(' ').append(md.getAuthorityValue()).append('\n');
+            }
+        }
+        if (ds.getAllPersons() != null) {
+            for (Person p : ds.getAllPersons()) {
+                sb.append(p.getType().getName())
+                .append('=')
+                .append(p.getLastname())
+                .append(", ")
+                .append(p.getFirstname())
+                .append(' ')
+                .append(p.getAuthorityValue())
+                .append('\n');
+            }
+        }
+        if (ds.getAllMetadataGroups() != null) {
+            for (MetadataGroup group : ds.getAllMetadataGroups()) {
+                sb.append(group.getType().getName()).append('\n');
+                for (Metadata md : group.getMetadataList()) {
+                    sb.append("  ").append(md.getType().getName()).append('=').append(md.getValue()).append('\n');
+                }
+                for (Person p : group.getPersonList()) {
+                    sb.append("  ").append(p.getType().getName()).append('=').append(p.getLastname()).append(", ").append(p.getFirstname()).append('\n');
+                }
+            }
+        }
+        if (ds.getAllChildren() != null) {
+            for (DocStruct child : ds.getAllChildren()) {
+                sb.append(describe(child));
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void runPluginOnMultiVolumeWork() throws Exception {
+        writeMultiVolumeWork();
+        s1.setTitel("anchor step");
+
+        ExcelMetadataenrichmentStepPlugin plugin = new ExcelMetadataenrichmentStepPlugin();
+        plugin.initialize(s1, "");
+        plugin.setExcelFile(resourcesFolder + "/sample.xlsx");
+        assertEquals(PluginReturnValue.FINISH, plugin.run());
+
+        Fileformat ff = process.readMetadataFile();
+        DocStruct anchor = ff.getDigitalDocument().getLogicalDocStruct();
+        DocStruct volume = anchor.getAllChildren().get(0);
+        DocStruct chapter1 = volume.getAllChildren().get(0);
+        DocStruct chapter2 = volume.getAllChildren().get(1);
+
+        // anchor and volume are found by their identifiers
+        assertEquals("Title", getMetadataValue(anchor, "TitleDocMain"));
+        assertEquals("second title", getMetadataValue(volume, "TitleDocMain"));
+        assertEquals("chapter title", getMetadataValue(chapter1, "TitleDocMain"));
+        assertEquals("Another chapter title", getMetadataValue(chapter2, "TitleDocMain"));
+
+        // the language is written into the anchor, the last row wins
+        assertEquals("eng", getMetadataValue(anchor, "DocLanguage"));
+        assertNull(getMetadataValue(volume, "DocLanguage"));
+        assertNull(getMetadataValue(chapter1, "DocLanguage"));
+        assertNull(getMetadataValue(chapter2, "DocLanguage"));
+
+        // groups are only allowed in chapters
+        assertTrue(anchor.getAllMetadataGroups() == null || anchor.getAllMetadataGroups().isEmpty());
+        assertTrue(volume.getAllMetadataGroups() == null || volume.getAllMetadataGroups().isEmpty());
+
+        List<MetadataGroup> groups = chapter1.getAllMetadataGroupsByType(prefs.getMetadataGroupTypeByName("ChapterInformation"));
+        assertEquals(1, groups.size());
+        assertEquals("chapter title", groups.get(0).getMetadataByType("TitleDocMainShort").get(0).getValue());
+
+        groups = chapter2.getAllMetadataGroupsByType(prefs.getMetadataGroupTypeByName("ChapterInformation"));
+        assertEquals(1, groups.size());
+        assertEquals("Another chapter title", groups.get(0).getMetadataByType("TitleDocMainShort").get(0).getValue());
+        // the empty person of the new group is used
+        List<Person> authors = groups.get(0).getPersonByType("Author");
+        assertEquals(1, authors.size());
+        assertEquals("John", authors.get(0).getFirstname());
+        assertEquals("Doe", authors.get(0).getLastname());
+
+        // persons are only written into the group
+        assertTrue(chapter2.getAllPersons() == null || chapter2.getAllPersons().isEmpty());
+    }
+
+    private String getMetadataValue(DocStruct ds, String metadataType) {
+        List<? extends Metadata> mdl = ds.getAllMetadataByType(prefs.getMetadataTypeByName(metadataType));
+        if (mdl == null || mdl.isEmpty()) {
+            return null;
+        }
+        return mdl.get(0).getValue();
+    }
+
+    private void writeMultiVolumeWork() throws Exception {
+        Fileformat ff = new MetsMods(prefs);
+        DigitalDocument dd = new DigitalDocument();
+        ff.setDigitalDocument(dd);
+
+        DocStruct anchor = createDocStruct(dd, "MultiVolumeWork", "1111");
+        DocStruct volume = createDocStruct(dd, "Volume", "2222");
+        anchor.addChild(volume);
+        volume.addChild(createDocStruct(dd, "Chapter", "3333"));
+        volume.addChild(createDocStruct(dd, "Chapter", "4444"));
+        dd.setLogicalDocStruct(anchor);
+
+        DocStruct physical = dd.createDocStruct(prefs.getDocStrctTypeByName("BoundBook"));
+        Metadata imagePath = new Metadata(prefs.getMetadataTypeByName("pathimagefiles"));
+        imagePath.setValue("00469418X_media");
+        physical.addMetadata(imagePath);
+        dd.setPhysicalDocStruct(physical);
+
+        // replaces the monograph, the anchor is written into meta_anchor.xml
+        ff.write(Paths.get(processDirectory.getAbsolutePath(), "meta.xml").toString());
+    }
+
+    private DocStruct createDocStruct(DigitalDocument dd, String type, String identifier) throws Exception {
+        DocStruct ds = dd.createDocStruct(prefs.getDocStrctTypeByName(type));
+        Metadata md = new Metadata(prefs.getMetadataTypeByName("CatalogIDDigital"));
+        md.setValue(identifier);
+        ds.addMetadata(md);
+        return ds;
+    }
+
     @Before
     public void setUpProcess() throws Exception {
 
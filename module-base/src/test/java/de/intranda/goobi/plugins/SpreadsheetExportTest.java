@@ -0,0 +1,59 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.easymock.EasyMock;
+import org.goobi.beans.Process;
+import org.goobi.beans.Ruleset;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.goobi.plugins.utils.ExcelConfig;
+import de.intranda.goobi.plugins.utils.SpreadsheetIndex;
+import ugh.dl.Fileformat;
+import ugh.dl.Prefs;
+import ugh.exceptions.ReadException;
+import ugh.fileformats.mets.MetsMods;
+
+public class SpreadsheetExportTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String resourcesFolder = TestResources.getResourcesFolder();
+
+    @Test
+    public void exportProcesses() throws Exception {
+        ExcelConfig ec = TestResources.getConfig();
+
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "ruleset.xml");
+        Fileformat ff = new MetsMods(prefs);
+        ff.read(resourcesFolder + "meta.xml");
+
+        Ruleset ruleset = EasyMock.createMock(Ruleset.class);
+        EasyMock.expect(ruleset.getPreferences()).andReturn(prefs).anyTimes();
+        Process readable = EasyMock.createMock(Process.class);
+        EasyMock.expect(readable.readMetadataFile()).andReturn(ff).anyTimes();
+        EasyMock.expect(readable.getRegelsatz()).andReturn(ruleset).anyTimes();
+        Process broken = EasyMock.createMock(Process.class);
+        EasyMock.expect(broken.readMetadataFile()).andThrow(new ReadException("broken")).anyTimes();
+        EasyMock.expect(broken.getTitel()).andReturn("broken").anyTimes();
+        EasyMock.replay(ruleset, readable, broken);
+
+        Path destination = folder.getRoot().toPath().resolve("export").resolve("all.xlsx");
+        List<String> problems = new SpreadsheetExport(ec).export(destination, Arrays.asList(readable, broken));
+
+        // the unreadable process is reported, the others are exported
+        assertEquals(1, problems.size());
+        assertTrue(problems.get(0).contains("broken"));
+        SpreadsheetIndex index = SpreadsheetIndex.read(destination, ec);
+        assertEquals(Arrays.asList("00469418X", "2222", "3333", "4444"), Arrays.asList(index.getRows().keySet().toArray()));
+    }
+}
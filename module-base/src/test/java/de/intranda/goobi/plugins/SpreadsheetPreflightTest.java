@@ -0,0 +1,45 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import de.intranda.goobi.plugins.utils.ExcelConfig;
+import de.intranda.goobi.plugins.utils.PreflightReport;
+import ugh.dl.Fileformat;
+import ugh.dl.Prefs;
+import ugh.fileformats.mets.MetsMods;
+
+public class SpreadsheetPreflightTest {
+
+    private static final String resourcesFolder = TestResources.getResourcesFolder();
+
+    @Test
+    public void checkSpreadsheet() throws Exception {
+        ExcelConfig ec = TestResources.getConfig();
+
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "ruleset.xml");
+        Fileformat ff = new MetsMods(prefs);
+        ff.read(resourcesFolder + "meta.xml");
+
+        SpreadsheetPreflight preflight = new SpreadsheetPreflight(ec);
+        PreflightReport report = preflight.check(Paths.get(resourcesFolder + "sample.xlsx"));
+        preflight.match(report, "00469418X", ff.getDigitalDocument().getLogicalDocStruct(), prefs);
+
+        assertTrue(report.getProblems().toString(), report.isValid());
+        assertEquals(4, report.getIndex().getRows().size());
+        assertEquals(Arrays.asList("2222", "3333", "4444"), Arrays.asList(report.getMatches().keySet().toArray()));
+        assertEquals(Collections.singletonList("00469418X"), report.getMatches().get("3333"));
+        assertEquals(Collections.singletonList("1111"), report.getUnmatchedIdentifiers());
+
+        // a second check of the unchanged file uses the cached index
+        assertSame(report.getIndex(), preflight.check(Paths.get(resourcesFolder + "sample.xlsx")).getIndex());
+    }
+}
@@ -0,0 +1,66 @@
+package de.intranda.goobi.plugins;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.apache.commons.configuration.ConfigurationException;
+
+import de.intranda.goobi.plugins.utils.ExcelConfig;
+
+/**
+ * Locates the test resources and configures the logging for the tests
+ */
+public final class TestResources {
+
+    public static final String CONFIG_FILE = "plugin_intranda_step_excelMetadataenrichment.xml";
+
+    private static String resourcesFolder;
+
+    private TestResources() {
+    }
+
+    /**
+     * get the folder containing the test resources, the logging configuration is set on the first call
+     *
+     * @return
+     */
+
+    public static synchronized String getResourcesFolder() {
+        if (resourcesFolder == null) {
+            resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+
+            if (!Files.exists(Paths.get(resourcesFolder))) {
+                resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+            }
+
+            String log4jFile = resourcesFolder + "log4j2.xml"; // for junit tests in eclipse
+
+            System.setProperty("log4j.configurationFile", log4jFile);
+        }
+        return resourcesFolder;
+    }
+
+    /**
+     * get the first &lt;config&gt; block of the test configuration
+     *
+     * @return
+     * @throws ConfigurationException
+     */
+
+    public static ExcelConfig getConfig() throws ConfigurationException {
+        return ExcelConfig.fromFile(new File(getResourcesFolder() + CONFIG_FILE));
+    }
+
+    /**
+     * get the &lt;config&gt; block of the test configuration for the given step
+     *
+     * @param stepName
+     * @return
+     * @throws ConfigurationException
+     */
+
+    public static ExcelConfig getConfig(String stepName) throws ConfigurationException {
+        return ExcelConfig.fromFile(new File(getResourcesFolder() + CONFIG_FILE), "config[./step='" + stepName + "']");
+    }
+}
@@ -0,0 +1,88 @@
+package de.intranda.goobi.plugins.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class EnrichmentJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path excelFile;
+    private Path journalFile;
+
+    @Before
+    public void setUp() throws Exception {
+        excelFile = folder.newFile("sample.xlsx").toPath();
+        Files.setLastModifiedTime(excelFile, FileTime.fromMillis(1000000));
+        journalFile = folder.getRoot().toPath().resolve("journal").resolve("enrichment.journal");
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        String key = excelFile.toAbsolutePath().normalize() + "\t1000000";
+        Files.createDirectories(journalFile.getParent());
+        Files.write(journalFile, Arrays.asList("STARTED\t1\t" + key, "DONE\t1\t" + key, "STARTED\t2\t" + key), StandardCharsets.UTF_8);
+
+        EnrichmentJournal journal = EnrichmentJournal.getInstance(journalFile.toString());
+        // DONE means skip
+        assertTrue(journal.isCompleted(1, excelFile.toString()));
+        // STARTED without DONE means redo
+        assertFalse(journal.isCompleted(2, excelFile.toString()));
+        assertFalse(journal.isCompleted(3, excelFile.toString()));
+
+        // a changed spreadsheet means redo
+        Files.setLastModifiedTime(excelFile, FileTime.fromMillis(2000000));
+        assertFalse(journal.isCompleted(1, excelFile.toString()));
+    }
+
+    @Test
+    public void testMarkAndReload() throws Exception {
+        EnrichmentJournal journal = EnrichmentJournal.getInstance(journalFile.toString());
+        journal.markStarted(1, excelFile.toString());
+        assertFalse(journal.isCompleted(1, excelFile.toString()));
+        journal.markCompleted(1, excelFile.toString());
+        assertTrue(journal.isCompleted(1, excelFile.toString()));
+
+        // removing the journal forces a new enrichment without a restart
+        Files.delete(journalFile);
+        assertFalse(journal.isCompleted(1, excelFile.toString()));
+    }
+
+    @Test
+    public void testCompactKeepsLinesOfOtherNodes() throws Exception {
+        EnrichmentJournal journal = EnrichmentJournal.getInstance(journalFile.toString());
+        journal.markStarted(1, excelFile.toString());
+
+        // another node appended its own lines in the meantime
+        String key = excelFile.toAbsolutePath().normalize() + "\t1000000";
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 1001; i++) {
+            lines.add("STARTED\t" + (i + 100) + "\t" + key);
+        }
+        lines.add("DONE\t2\t" + key);
+        Files.write(journalFile, lines, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        journal.markCompleted(1, excelFile.toString());
+
+        List<String> compacted = Files.readAllLines(journalFile, StandardCharsets.UTF_8);
+        assertEquals(Arrays.asList("DONE\t2\t" + key, "DONE\t1\t" + key), compacted);
+        assertTrue(Files.exists(Paths.get(journalFile + ".lock")));
+    }
+}
@@ -0,0 +1,76 @@
+package de.intranda.goobi.plugins.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.goobi.plugins.utils.ProcessLockManager.ProcessLock;
+
+public class ProcessLockManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void serialiseSameProcess() throws Exception {
+        long acquisitions = ProcessLockManager.getAcquisitions();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread other;
+        try (ProcessLock lock = ProcessLockManager.lock(1, null)) {
+            other = lockInThread(1, acquired);
+            // the second step waits as long as the first one holds the lock
+            assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        }
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        other.join();
+
+        assertEquals(acquisitions + 2, ProcessLockManager.getAcquisitions());
+        assertTrue(ProcessLockManager.getMaxWaitMillis() >= 200);
+    }
+
+    @Test
+    public void lockDifferentProcessesInParallel() throws Exception {
+        long acquisitions = ProcessLockManager.getAcquisitions();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread other;
+        try (ProcessLock lock = ProcessLockManager.lock(1, null)) {
+            other = lockInThread(2, acquired);
+            assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        }
+        other.join();
+        assertEquals(acquisitions + 2, ProcessLockManager.getAcquisitions());
+    }
+
+    @Test
+    public void createLockFile() throws Exception {
+        Path processFolder = folder.newFolder("1").toPath();
+        try (ProcessLock lock = ProcessLockManager.lock(1, processFolder)) {
+            assertTrue(Files.exists(processFolder.resolve(ProcessLockManager.LOCK_FILE_NAME)));
+        }
+        // the lock is released and can be acquired again
+        try (ProcessLock lock = ProcessLockManager.lock(1, processFolder)) {
+            assertTrue(Files.exists(processFolder.resolve(ProcessLockManager.LOCK_FILE_NAME)));
+        }
+    }
+
+    private static Thread lockInThread(int processId, CountDownLatch acquired) {
+        Thread thread = new Thread(() -> {
+            try (ProcessLock lock = ProcessLockManager.lock(processId, null)) {
+                acquired.countDown();
+            } catch (Exception e) {
+                // the test fails because the latch is never counted down
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,98 @@
+package de.intranda.goobi.plugins.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.goobi.plugins.TestResources;
+import ugh.dl.Fileformat;
+import ugh.dl.Prefs;
+import ugh.fileformats.mets.MetsMods;
+
+public class SpreadsheetExporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String resourcesFolder = TestResources.getResourcesFolder();
+
+    @Test
+    public void exportAndReadAgain() throws Exception {
+        ExcelConfig ec = TestResources.getConfig();
+
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "ruleset.xml");
+        Fileformat ff = new MetsMods(prefs);
+        ff.read(resourcesFolder + "meta.xml");
+
+        Path destination = folder.getRoot().toPath().resolve("00469418X.xlsx");
+        try (SpreadsheetExporter exporter = new SpreadsheetExporter(ec, destination)) {
+            exporter.addDocStructs(ff.getDigitalDocument().getLogicalDocStruct(), prefs);
+            assertEquals(4, exporter.getRowCount());
+            exporter.finish();
+        }
+        assertFalse(Files.exists(FileHelper.getTemporaryFile(destination)));
+
+        // the exported file can be read with the same configuration
+        SpreadsheetIndex index = SpreadsheetIndex.read(destination, ec);
+        assertEquals(Arrays.asList("00469418X", "2222", "3333", "4444"), Arrays.asList(index.getRows().keySet().toArray()));
+        Map<String, Integer> headerOrder = index.getHeaderOrder();
+
+        Map<Integer, String> top = index.getRow("00469418X");
+        assertEquals("Title", top.get(headerOrder.get("Title")));
+        assertEquals("Lastname, Firstname", top.get(headerOrder.get("Author")));
+
+        assertEquals("Existing main title", index.getRow("3333").get(headerOrder.get("Title")));
+        assertNull(index.getRow("2222").get(headerOrder.get("Title")));
+    }
+
+    @Test
+    public void discardUnfinishedExport() throws Exception {
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "ruleset.xml");
+        Fileformat ff = new MetsMods(prefs);
+        ff.read(resourcesFolder + "meta.xml");
+
+        Path destination = folder.getRoot().toPath().resolve("00469418X.xlsx");
+        try (SpreadsheetExporter exporter = new SpreadsheetExporter(TestResources.getConfig(), destination)) {
+            exporter.addDocStructs(ff.getDigitalDocument().getLogicalDocStruct(), prefs);
+        }
+        assertFalse(Files.exists(destination));
+        assertFalse(Files.exists(FileHelper.getTemporaryFile(destination)));
+    }
+
+    @Test
+    public void failWhenRowsExceedRowDataEnd() throws Exception {
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "ruleset.xml");
+        Fileformat ff = new MetsMods(prefs);
+        ff.read(resourcesFolder + "meta.xml");
+        ExcelConfig ec = TestResources.getConfig();
+        // the import would read only three of the four rows
+        ec.setRowDataEnd(ec.getRowDataStart() + 2);
+
+        Path destination = folder.getRoot().toPath().resolve("00469418X.xlsx");
+        try (SpreadsheetExporter exporter = new SpreadsheetExporter(ec, destination)) {
+            exporter.addDocStructs(ff.getDigitalDocument().getLogicalDocStruct(), prefs);
+            assertEquals(1, exporter.getSkippedRows());
+            exporter.finish();
+            fail("the export must not be published if it can't be imported completely");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains(String.valueOf(ec.getRowDataStart() + 3)));
+        }
+        assertFalse(Files.exists(destination));
+        assertFalse(Files.exists(FileHelper.getTemporaryFile(destination)));
+    }
+}
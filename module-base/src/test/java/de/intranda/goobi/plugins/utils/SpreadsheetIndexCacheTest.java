@@ -0,0 +1,108 @@
+package de.intranda.goobi.plugins.utils;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.goobi.plugins.TestResources;
+
+public class SpreadsheetIndexCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String resourcesFolder = TestResources.getResourcesFolder();
+
+    private ExcelConfig ec;
+
+    @Before
+    public void setUp() throws Exception {
+        ec = TestResources.getConfig();
+    }
+
+    @After
+    public void tearDown() {
+        SpreadsheetWatcher.stopAll();
+        SpreadsheetIndexCache.setMaxEntries(SpreadsheetIndexCache.DEFAULT_MAX_ENTRIES);
+    }
+
+    private Path copySample(String name) throws Exception {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.copy(Paths.get(resourcesFolder + "sample.xlsx"), file);
+        // older than the settle time of the watcher
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 60000));
+        return file;
+    }
+
+    @Test
+    public void shareConcurrentReads() throws Exception {
+        Path file = copySample("shared.xlsx");
+        int threads = 4;
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<SpreadsheetIndex>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                Callable<SpreadsheetIndex> read = () -> {
+                    barrier.await();
+                    return SpreadsheetIndexCache.getIndex(file, ec);
+                };
+                results.add(executor.submit(read));
+            }
+            // all callers get the result of a single read
+            SpreadsheetIndex first = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<SpreadsheetIndex> result : results) {
+                assertSame(first, result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void limitCacheSize() throws Exception {
+        Path first = copySample("first.xlsx");
+        Path second = copySample("second.xlsx");
+        SpreadsheetIndexCache.setMaxEntries(1);
+
+        SpreadsheetIndex index = SpreadsheetIndexCache.getIndex(first, ec);
+        assertSame(index, SpreadsheetIndexCache.getIndex(first, ec));
+
+        // the second file replaces the first one
+        SpreadsheetIndexCache.getIndex(second, ec);
+        assertFalse(SpreadsheetIndexCache.contains(first, ec));
+        assertNotSame(index, SpreadsheetIndexCache.getIndex(first, ec));
+    }
+
+    @Test
+    public void readExistingFilesWhenWatcherStarts() throws Exception {
+        Path file = copySample("existing.xlsx");
+        SpreadsheetWatcher.start(folder.getRoot().toPath(), ec, path -> path.getFileName().toString().endsWith(".xlsx"));
+
+        long end = System.currentTimeMillis() + 10000;
+        while (!SpreadsheetIndexCache.contains(file, ec) && System.currentTimeMillis() < end) {
+            Thread.sleep(100);
+        }
+        assertTrue(SpreadsheetIndexCache.contains(file, ec));
+    }
+}
@@ -0,0 +1,37 @@
+package de.intranda.goobi.plugins.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+import de.intranda.goobi.plugins.TestResources;
+
+public class SpreadsheetIndexTest {
+
+    private static final String resourcesFolder = TestResources.getResourcesFolder();
+
+    @Test
+    public void stopReadingWhenInterrupted() throws Exception {
+        ExcelConfig ec = TestResources.getConfig();
+        Path excelFile = Paths.get(resourcesFolder + "sample.xlsx");
+        SpreadsheetIndexCache.invalidate(excelFile);
+
+        Thread.currentThread().interrupt();
+        try {
+            SpreadsheetIndexCache.getIndex(excelFile, ec);
+            fail("reading must stop when the thread is interrupted");
+        } catch (InterruptedIOException e) {
+            // expected
+        } finally {
+            Thread.interrupted();
+        }
+
+        // the cancelled read was not cached, the next call reads the complete file
+        assertEquals(4, SpreadsheetIndexCache.getIndex(excelFile, ec).getRows().size());
+    }
+}
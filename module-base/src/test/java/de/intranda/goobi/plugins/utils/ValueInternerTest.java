@@ -0,0 +1,43 @@
+package de.intranda.goobi.plugins.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class ValueInternerTest {
+
+    @Test
+    public void testDeduplication() {
+        ValueInterner interner = new ValueInterner(10);
+        String first = interner.intern(new String("ger"));
+        assertSame(first, interner.intern(new String("ger")));
+        assertEquals(1, interner.getSize());
+        assertEquals(1, interner.getHits());
+        assertEquals(1, interner.getMisses());
+        assertEquals(0.5, interner.getHitRate(), 0.001);
+    }
+
+    @Test
+    public void testCapacity() {
+        ValueInterner interner = new ValueInterner(1);
+        String ger = interner.intern(new String("ger"));
+        interner.intern("eng");
+        assertEquals(1, interner.getSize());
+        // known values are still shared when the capacity is reached
+        assertSame(ger, interner.intern(new String("ger")));
+        String eng = new String("eng");
+        assertSame(eng, interner.intern(eng));
+    }
+
+    @Test
+    public void testDisabled() {
+        ValueInterner interner = new ValueInterner(0);
+        interner.intern("ger");
+        String ger = new String("ger");
+        assertSame(ger, interner.intern(ger));
+        assertNotSame(ger, interner.intern(new String("ger")));
+        assertEquals(0, interner.getSize());
+    }
+}